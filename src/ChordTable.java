@@ -0,0 +1,147 @@
+/**
+ * The ChordTable class names chords from the set of pitch classes being held.
+ *
+ * A chord is described by a 12-bit mask, bit 0 for C up to bit 11 for B, plus the
+ * pitch class of its lowest note. Every mask and bass note is resolved ahead of time
+ * into a table, so naming a chord is a single array lookup whatever is being played.
+ *
+ * Recognized chords are triads (major, minor, diminished, augmented, sus2, sus4),
+ * sixths, sevenths, and 9th, 11th and 13th chords, with their root and inversion.
+ * Only the stacked triad or 7th counts towards the inversion: with an added 6th or
+ * 9th, or an extension, in the bass the chord is named with that note in the bass.
+ * When the same notes spell more than one chord (C6 and Am7, or the symmetric
+ * diminished 7th) the reading whose root is in the bass wins, and otherwise the
+ * simpler chord.
+ *
+ * @version 1.1
+ * @since 2026-10-18
+ */
+
+public final class ChordTable {
+
+    private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+
+    // Chord qualities, simplest first. Tones are listed stacked in thirds from the root,
+    // then any added tones, so the index of a stacked tone is the inversion it produces
+    // when it is in the bass.
+    private static final String[] QUALITY_NAMES = {
+            "MAJOR", "MINOR", "DIMINISHED", "AUGMENTED", "SUS4", "SUS2",
+            "DOMINANT 7TH", "MAJOR 7TH", "MINOR 7TH", "HALF-DIMINISHED 7TH", "DIMINISHED 7TH",
+            "MINOR-MAJOR 7TH", "AUGMENTED 7TH", "AUGMENTED MAJOR 7TH", "7TH SUS4",
+            "MAJOR 6TH", "MINOR 6TH", "ADD9", "MINOR ADD9",
+            "DOMINANT 9TH", "MAJOR 9TH", "MINOR 9TH",
+            "DOMINANT 11TH", "MINOR 11TH",
+            "DOMINANT 13TH", "MAJOR 13TH", "MINOR 13TH"
+    };
+    private static final int[][] QUALITY_TONES = {
+            {0, 4, 7}, {0, 3, 7}, {0, 3, 6}, {0, 4, 8}, {0, 5, 7}, {0, 2, 7},
+            {0, 4, 7, 10}, {0, 4, 7, 11}, {0, 3, 7, 10}, {0, 3, 6, 10}, {0, 3, 6, 9},
+            {0, 3, 7, 11}, {0, 4, 8, 10}, {0, 4, 8, 11}, {0, 5, 7, 10},
+            {0, 4, 7, 9}, {0, 3, 7, 9}, {0, 4, 7, 2}, {0, 3, 7, 2},
+            {0, 4, 7, 10, 2}, {0, 4, 7, 11, 2}, {0, 3, 7, 10, 2},
+            {0, 4, 7, 10, 2, 5}, {0, 3, 7, 10, 2, 5},
+            {0, 4, 7, 10, 2, 9}, {0, 4, 7, 11, 2, 9}, {0, 3, 7, 10, 2, 9}
+    };
+    // How many of each quality's tones are stacked in thirds; the 6th of a sixth chord
+    // and the 9th of an add9 are added to a triad, not a member of it.
+    private static final int[] QUALITY_STACKED = {
+            3, 3, 3, 3, 3, 3,
+            4, 4, 4, 4, 4,
+            4, 4, 4, 4,
+            3, 3, 3, 3,
+            4, 4, 4,
+            4, 4,
+            4, 4, 4
+    };
+    private static final String[] INVERSION_NAMES = {" ROOT", ", 1ST INVERSION", ", 2ND INVERSION", ", 3RD INVERSION"};
+
+    // Indexed by mask * 12 + bass. Each entry packs quality + 1, root and the index of
+    // the bass among the chord's tones; 0 means the notes are not a known chord.
+    private static final short[] TABLE = new short[4096 * 12];
+
+    // Indexed by quality, root and bass tone index.
+    private static final String[][][] LABELS = new String[QUALITY_NAMES.length][12][];
+
+    static {
+        for (int quality = 0; quality < QUALITY_TONES.length; quality++) {
+            int[] tones = QUALITY_TONES[quality];
+            for (int root = 0; root < 12; root++) {
+                int mask = 0;
+                for (int tone : tones) {
+                    mask |= 1 << ((root + tone) % 12);
+                }
+
+                for (int i = 0; i < tones.length; i++) {
+                    int bass = (root + tones[i]) % 12;
+                    int slot = mask * 12 + bass;
+                    // keep the simpler chord, unless this reading puts its root in the bass
+                    if (TABLE[slot] == 0 || (i == 0 && inversionOf(TABLE[slot]) != 0)) {
+                        TABLE[slot] = (short) (((quality + 1) << 8) | (root << 4) | i);
+                    }
+                }
+
+                LABELS[quality][root] = new String[tones.length];
+                for (int i = 0; i < tones.length; i++) {
+                    String position = i < QUALITY_STACKED[quality]
+                            ? INVERSION_NAMES[i]
+                            : ", " + NOTE_NAMES[(root + tones[i]) % 12] + " IN BASS";
+                    LABELS[quality][root][i] = NOTE_NAMES[root] + " " + QUALITY_NAMES[quality] + position + "\n";
+                }
+            }
+        }
+    }
+
+    private ChordTable() { }
+
+    /**
+     * Look up the chord formed by a set of pitch classes.
+     * @param pitchClasses The held pitch classes, bit 0 for C up to bit 11 for B.
+     * @param bass The pitch class of the lowest held note (0 to 11).
+     * @return An entry for root(), inversionOf() and label(), or 0 if the notes are not a known chord.
+     */
+
+    public static int lookup(int pitchClasses, int bass) {
+        return TABLE[(pitchClasses & 0xfff) * 12 + bass];
+    }
+
+    /**
+     * @param entry A non-zero entry from lookup().
+     * @return The root of the chord (0 to 11).
+     */
+
+    public static int root(int entry) {
+        return (entry >>> 4) & 0xf;
+    }
+
+    /**
+     * @param entry A non-zero entry from lookup().
+     * @return 0 for root position, 1 for the first inversion, and so on, or -1 when
+     * the bass is an added tone or an extension rather than a member of the triad or 7th.
+     */
+
+    public static int inversionOf(int entry) {
+        int tone = entry & 0xf;
+        return tone < QUALITY_STACKED[(entry >>> 8) - 1] ? tone : -1;
+    }
+
+    /**
+     * @param entry A non-zero entry from lookup().
+     * @return The name of the chord quality, such as "MINOR 7TH".
+     */
+
+    public static String qualityName(int entry) {
+        return QUALITY_NAMES[(entry >>> 8) - 1];
+    }
+
+    /**
+     * Describe a chord for display, for example "E MINOR, 1ST INVERSION".
+     * @param entry An entry from lookup().
+     * @return The description, or an empty string for 0.
+     */
+
+    public static String label(int entry) {
+        if (entry == 0)
+            return "";
+        return LABELS[(entry >>> 8) - 1][root(entry)][entry & 0xf];
+    }
+}
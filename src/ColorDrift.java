@@ -5,23 +5,73 @@ import java.awt.*;
  *
  * The algorithm begins with all 5 colors on Gray values, and only lets them move
  * in small steps at a time. This will create a smooth transition over time for
- * a better experience during live-play.
+ * a better experience during live-play. Each note moves the next color along, going
+ * round the palette like a ring buffer, so a palette of any size costs the same per note.
+ *
+ * In perceptual mode the colors drift in OKLab instead of RGB: each note moves the
+ * lightness, green-red or blue-yellow axis by the same perceived amount, so every
+ * step is equally visible whatever the color.
  *
  * @author Aaron Weiss
- * @version 1.0
+ * @version 1.2
  * @since 2018-11-21
  */
 
 public class ColorDrift implements PaletteAlgorithm {
 
-    private Color[] palette;
+    // colors packed as 0xRRGGBB, so drifting a color does not allocate
+    private int[] palette;
+    // Color objects handed out by getColors(), rebuilt only for colors that drifted
+    private Color[] colors;
     private int currentColor;
     private int lastVelocity;
 
+    // the colors in OKLab, in perceptual mode only
+    private final float[] lightness;
+    private final float[] greenRed;
+    private final float[] blueYellow;
+    private static final float PERCEPTUAL_STEP = 0.02f; // about one just noticeable difference
+
     public ColorDrift() {
-        palette = new Color[5];
-        for (int i = 0; i < 5; i++) {
-            palette[i] = new Color(128, 128, 128);
+        this(false);
+    }
+
+    /**
+     * Constructor for a ColorDrift that can drift perceptually.
+     * @param perceptual Whether to drift in OKLab rather than RGB.
+     */
+
+    public ColorDrift(boolean perceptual) {
+        this(perceptual, 5);
+    }
+
+    /**
+     * Constructor for a ColorDrift with a palette of any size.
+     * @param perceptual Whether to drift in OKLab rather than RGB.
+     * @param size The number of colors in the palette.
+     */
+
+    public ColorDrift(boolean perceptual, int size) {
+        palette = new int[size];
+        colors = new Color[size];
+        lightness = perceptual ? new float[size] : null;
+        greenRed = perceptual ? new float[size] : null;
+        blueYellow = perceptual ? new float[size] : null;
+        reset();
+    }
+
+    /**
+     * Implements the reset method from the PaletteAlgorithm interface.
+     * Return all colors to gray.
+     */
+
+    public void reset() {
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = 0x808080;
+            colors[i] = null;
+        }
+        if (lightness != null) {
+            PerceptualColor.rgbToOklab(palette, 0, lightness, greenRed, blueYellow, 0, palette.length);
         }
 
         currentColor = 0;
@@ -40,14 +90,21 @@ public class ColorDrift implements PaletteAlgorithm {
 
         boolean increase = velocity > lastVelocity;
 
+        if (lightness != null) {
+            drift(note, increase ? PERCEPTUAL_STEP : -PERCEPTUAL_STEP);
+            currentColor = ++currentColor % palette.length;
+            lastVelocity = velocity;
+            return;
+        }
+
         int step = 7;
 
         if (!increase)
             step = -step;
 
-        int red = palette[currentColor].getRed();
-        int green = palette[currentColor].getGreen();
-        int blue = palette[currentColor].getBlue();
+        int red = (palette[currentColor] >>> 16) & 0xff;
+        int green = (palette[currentColor] >>> 8) & 0xff;
+        int blue = palette[currentColor] & 0xff;
 
         if (note % 3 == 0)
             red += step;
@@ -60,19 +117,57 @@ public class ColorDrift implements PaletteAlgorithm {
         green = constrainToRange(green, 0, 255);
         blue = constrainToRange(blue, 0, 255);
 
-        palette[currentColor] = new Color(red, green, blue);
+        palette[currentColor] = (red << 16) | (green << 8) | blue;
+        colors[currentColor] = null;
 
         currentColor = ++currentColor % palette.length;
         lastVelocity = velocity;
     }
 
+    /**
+     * Move the current color along one OKLab axis and convert it back to RGB.
+     * @param note The note played, which picks the axis.
+     * @param step The distance to move.
+     */
+
+    private void drift(int note, float step) {
+        int i = currentColor;
+        if (note % 3 == 0)
+            lightness[i] = Math.max(0.0f, Math.min(1.0f, lightness[i] + step));
+        else if (note % 3 == 1)
+            greenRed[i] += step;
+        else
+            blueYellow[i] += step;
+
+        PerceptualColor.oklabToRgb(lightness, greenRed, blueYellow, i, palette, i, 1);
+        // continue from the color actually shown, so a color clipped at the edge of
+        // the gamut moves back as soon as a note steps the other way
+        PerceptualColor.rgbToOklab(palette, i, lightness, greenRed, blueYellow, i, 1);
+        colors[i] = null;
+    }
+
     /**
      * Implements PaletteAlgorithm method. Returns colors.
-     * @return palette Array of size 5 of Color objects.
+     * @return palette Array of Color objects, one per palette color.
      */
 
     public Color[] getColors() {
-        return palette;
+        for (int i = 0; i < palette.length; i++) {
+            if (colors[i] == null)
+                colors[i] = new Color(palette[i]);
+        }
+        return colors;
+    }
+
+    /**
+     * Implements PaletteAlgorithm method. Copies the colors without allocating.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @return The number of colors.
+     */
+
+    public int getColors(int[] rgb) {
+        System.arraycopy(palette, 0, rgb, 0, palette.length);
+        return palette.length;
     }
 
     /**
@@ -0,0 +1,70 @@
+/**
+ * The ColorHex class formats packed RGB colors as hex strings, such as "#1a2b3c",
+ * using a lookup table of every byte's two digits instead of String.format, and
+ * parses them back.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public final class ColorHex {
+
+    // two lowercase hex digits for every value 0 - 255
+    private static final char[] DIGITS = new char[512];
+
+    static {
+        char[] hex = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < 256; i++) {
+            DIGITS[2 * i] = hex[i >>> 4];
+            DIGITS[2 * i + 1] = hex[i & 0xf];
+        }
+    }
+
+    private ColorHex() { }
+
+    /**
+     * Write a color as 7 characters, '#' followed by six hex digits.
+     * @param rgb The color packed as 0xRRGGBB; higher bits are ignored.
+     * @param dest The array to write into.
+     * @param offset The index of the '#'.
+     */
+
+    public static void format(int rgb, char[] dest, int offset) {
+        int red = (rgb >>> 16) & 0xff;
+        int green = (rgb >>> 8) & 0xff;
+        int blue = rgb & 0xff;
+        dest[offset] = '#';
+        dest[offset + 1] = DIGITS[2 * red];
+        dest[offset + 2] = DIGITS[2 * red + 1];
+        dest[offset + 3] = DIGITS[2 * green];
+        dest[offset + 4] = DIGITS[2 * green + 1];
+        dest[offset + 5] = DIGITS[2 * blue];
+        dest[offset + 6] = DIGITS[2 * blue + 1];
+    }
+
+    /**
+     * Format a color as a string, '#' followed by six hex digits.
+     * @param rgb The color packed as 0xRRGGBB; higher bits are ignored.
+     * @return The hex string.
+     */
+
+    public static String format(int rgb) {
+        char[] chars = new char[7];
+        format(rgb, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Parse a color written as six hex digits, with or without a leading '#'.
+     * @param hex The hex string.
+     * @return The color packed as 0xRRGGBB.
+     * @throws NumberFormatException if the string is not a color.
+     */
+
+    public static int parse(String hex) {
+        String digits = hex.startsWith("#") ? hex.substring(1) : hex;
+        if (digits.length() != 6 || digits.charAt(0) == '-' || digits.charAt(0) == '+')
+            throw new NumberFormatException("Not a hex color: " + hex);
+        return Integer.parseInt(digits, 16);
+    }
+}
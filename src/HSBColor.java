@@ -24,7 +24,27 @@ public class HSBColor {
      */
 
     public Color getColor() {
-        return Color.getHSBColor(hue, saturation, brightness);
+        return new Color(getRGB());
+    }
+
+    /**
+     * Convert this color system to RGB without allocating a Color. Goes through
+     * PackedHSB, so it matches converting getPacked() colors in bulk, and is within
+     * one step of Color.HSBtoRGB on each channel.
+     * @return The equivalent color packed as 0xRRGGBB.
+     */
+
+    public int getRGB() {
+        return PackedHSB.toRGB(getPacked());
+    }
+
+    /**
+     * Pack this color into one int, for storing many colors compactly.
+     * @return The color in PackedHSB form.
+     */
+
+    public int getPacked() {
+        return PackedHSB.pack(hue, saturation, brightness);
     }
 
     /**
@@ -0,0 +1,127 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into log-linear
+ * buckets, in the style of HdrHistogram: every power of two is split into 16
+ * buckets, so any recorded value is known to within about 6% from 1 ns to about
+ * 18 minutes, in a fixed 5 KB of counts.
+ *
+ * Recording never allocates or locks. Each histogram is written by one thread at a
+ * time (or by several threads that hand over through a lock) and may be read from
+ * any thread; recordConcurrent() can be called by several threads at once.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    // total count, total of values and largest value
+    private final AtomicLongArray totals = new AtomicLongArray(3);
+
+    /**
+     * Record one duration.
+     * @param nanos The duration in nanoseconds; negative values count as 0.
+     */
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int bucket = bucketOf(value);
+        // single writer, so a plain read-increment-write is enough
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        totals.lazySet(0, totals.get(0) + 1);
+        totals.lazySet(1, totals.get(1) + value);
+        if (value > totals.get(2)) {
+            totals.lazySet(2, value);
+        }
+    }
+
+    /**
+     * Record one duration from a thread that may be recording at the same time as others.
+     * @param nanos The duration in nanoseconds; negative values count as 0.
+     */
+
+    public void recordConcurrent(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        totals.incrementAndGet(0);
+        totals.addAndGet(1, value);
+        long max;
+        while (value > (max = totals.get(2)) && !totals.compareAndSet(2, max, value)) { }
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+
+    public long getCount() {
+        return totals.get(0);
+    }
+
+    /**
+     * @return The mean of the recorded values in nanoseconds, or 0 if none were recorded.
+     */
+
+    public long getMean() {
+        long count = totals.get(0);
+        return count == 0 ? 0 : totals.get(1) / count;
+    }
+
+    /**
+     * @return The largest recorded value in nanoseconds.
+     */
+
+    public long getMax() {
+        return totals.get(2);
+    }
+
+    /**
+     * Find the value below which a fraction of the recorded values fall.
+     * @param fraction The fraction, such as 0.99.
+     * @return The upper bound of the bucket holding that value, in nanoseconds, or 0 if none were recorded.
+     */
+
+    public long getPercentile(double fraction) {
+        long count = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // the last bucket also holds everything too large to bucket
+                return i == BUCKETS - 1 ? getMax() : Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+        int sub = (int) (Math.min(value >>> (magnitude - SUB_BUCKET_BITS), 2 * SUB_BUCKETS - 1)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
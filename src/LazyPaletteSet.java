@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+
+/**
+ * The LazyPaletteSet class runs a set of algorithms where only one, the displayed
+ * algorithm, is kept up to date on every note.
+ *
+ * Every note is written once to a shared log of packed ints. The active algorithm
+ * gets the note immediately; the others remember how far into the log they are and
+ * catch up when they are selected or their colors are read, or a slice at a time
+ * when the caller has nothing else to do (catchUpSome()). Logging a note costs the
+ * same however many algorithms are registered; the catching up is still owed, but it
+ * never runs as one burst on the live path. Releases are logged the same way, flagged
+ * in the top bit and followed by the note's duration, but only when some algorithm is
+ * DURATION_WEIGHTED.
+ *
+ * The log is kept in segments, recycled once every algorithm has read them. If the
+ * caller never idles and the log grows past MAX_SEGMENTS, each logged note also moves
+ * the algorithm furthest behind a short slice on, so memory stays bounded.
+ *
+ * Not thread-safe; callers synchronize as they would for the algorithms themselves.
+ *
+ * @version 1.3
+ * @since 2026-10-18
+ */
+
+public class LazyPaletteSet {
+
+    private static final int SEGMENT_BITS = 13;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int MAX_SEGMENTS = 16;
+    // log entries an algorithm catches up on per note once the log is over MAX_SEGMENTS
+    private static final int CATCH_UP_SLICE = 64;
+    private static final int SPARE_SEGMENTS = 2;
+    private static final int RELEASE = 1 << 31;
+    private static final boolean RELEASES =
+            PaletteAlgorithms.any(PaletteAlgorithmProvider.Capability.DURATION_WEIGHTED);
+
+    private final PaletteAlgorithm[] algorithms;
+    // the log, oldest segment first; positions count from the start of the session,
+    // and first, the position of the oldest segment's first entry, is segment-aligned
+    private final ArrayList<int[]> segments = new ArrayList<>();
+    private final ArrayList<int[]> spare = new ArrayList<>();
+    private long first;
+    private long end;
+    // the log position up to which each algorithm has been given the notes
+    private final long[] applied;
+    private int active;
+    // times the active algorithm on live notes when set; catching up is not timed
+    private PaletteMetrics metrics;
+
+    /**
+     * Constructor for the LazyPaletteSet class.
+     * @param algorithms The algorithms, each given the same notes so far, if any.
+     * @param active The index of the algorithm updated on every note.
+     */
+
+    public LazyPaletteSet(PaletteAlgorithm[] algorithms, int active) {
+        this.algorithms = algorithms;
+        this.applied = new long[algorithms.length];
+        this.active = active;
+    }
+
+    /**
+     * Add a note to the active algorithm now and to the others later.
+     * @param note The note played, from 0 to 11.
+     * @param velocity The velocity of note played, from 0 to 127.
+     * @param octave The octave of note played, from -1 to 9.
+     */
+
+    public void add(int note, int velocity, int octave) {
+        append((note << 16) | ((octave + 1) << 8) | velocity);
+
+        catchUp(active, Long.MAX_VALUE, metrics);
+        bound();
+    }
+
+    /**
+     * Tell the active algorithm now, and the others later, that a note stopped sounding.
+     * @param note The note released, from 0 to 11.
+     * @param velocity The velocity the note was struck with.
+     * @param octave The octave of the note, from -1 to 9.
+     * @param micros How long the note sounded, in microseconds.
+     */
+
+    public void release(int note, int velocity, int octave, long micros) {
+        if (!RELEASES)
+            return;
+        append(RELEASE | (note << 16) | ((octave + 1) << 8) | velocity);
+        append((int) Math.min(Integer.MAX_VALUE, Math.max(0, micros)));
+
+        catchUp(active, Long.MAX_VALUE, metrics);
+        bound();
+    }
+
+    /**
+     * Make another algorithm the one updated on every note. It first catches up on
+     * the notes it missed.
+     * @param index The index of the algorithm.
+     */
+
+    public void setActive(int index) {
+        catchUp(index, Long.MAX_VALUE, null);
+        recycle();
+        active = index;
+    }
+
+    /**
+     * Bring an algorithm up to date and return it.
+     * @param index The index of the algorithm.
+     * @return The algorithm, having been given every note so far.
+     */
+
+    public PaletteAlgorithm get(int index) {
+        catchUp(index, Long.MAX_VALUE, null);
+        recycle();
+        return algorithms[index];
+    }
+
+    /**
+     * Bring an algorithm up to date and copy its palette.
+     * @param index The index of the algorithm.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @return The number of colors written.
+     */
+
+    public int getColors(int index, int[] rgb) {
+        catchUp(index, Long.MAX_VALUE, null);
+        recycle();
+        return algorithms[index].getColors(rgb);
+    }
+
+    /**
+     * Give the algorithm furthest behind a bounded slice of the notes it missed. Call
+     * while idle, releasing any lock between calls, so the log is read off without
+     * delaying live notes.
+     * @param budget The most log entries to replay.
+     * @return Whether some algorithm is still behind.
+     */
+
+    public boolean catchUpSome(int budget) {
+        int behind = furthestBehind();
+        if (behind < 0)
+            return false;
+        catchUp(behind, budget, null);
+        recycle();
+        return furthestBehind() >= 0;
+    }
+
+    /**
+     * Reset every algorithm and forget the logged notes, so the set can be reused
+     * for a new session without allocating new algorithms.
+     */
+
+    public void reset() {
+        PaletteAlgorithms.resetAll(algorithms);
+        while (!segments.isEmpty()) {
+            retire(segments.remove(segments.size() - 1));
+        }
+        first = 0;
+        end = 0;
+        for (int i = 0; i < applied.length; i++) {
+            applied[i] = 0;
+        }
+    }
+
+    /**
+     * Time the active algorithm on every note and release from now on. Replays while
+     * catching up are not timed, so uploads and switches do not skew live latencies.
+     * @param metrics Receives the durations, as stage FIRST_ALGORITHM + the algorithm's index.
+     */
+
+    public void setMetrics(PaletteMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The number of algorithms in the set.
+     */
+
+    public int size() {
+        return algorithms.length;
+    }
+
+    private void append(int entry) {
+        int segment = (int) ((end - first) >>> SEGMENT_BITS);
+        if (segment == segments.size()) {
+            segments.add(spare.isEmpty() ? new int[SEGMENT_SIZE] : spare.remove(spare.size() - 1));
+        }
+        segments.get(segment)[(int) (end & (SEGMENT_SIZE - 1))] = entry;
+        end++;
+    }
+
+    private int entry(long position) {
+        return segments.get((int) ((position - first) >>> SEGMENT_BITS))[(int) (position & (SEGMENT_SIZE - 1))];
+    }
+
+    /**
+     * Give an algorithm the logged notes it has not had yet, at most limit entries.
+     * A release and its duration are always replayed together.
+     * @param timer Times each entry, or null.
+     */
+
+    private void catchUp(int index, long limit, PaletteMetrics timer) {
+        PaletteAlgorithm algorithm = algorithms[index];
+        long i = applied[index];
+        long stop = end - i > limit ? i + limit : end;
+        while (i < stop) {
+            int event = entry(i++);
+            int note = (event >>> 16) & 0x7fff;
+            int octave = ((event >>> 8) & 0xff) - 1;
+            long start = timer == null ? 0 : System.nanoTime();
+            if ((event & RELEASE) != 0)
+                algorithm.release(note, event & 0xff, octave, entry(i++));
+            else
+                algorithm.add(note, event & 0xff, octave);
+            if (timer != null) {
+                timer.record(PaletteMetrics.FIRST_ALGORITHM + index, System.nanoTime() - start);
+            }
+        }
+        applied[index] = i;
+    }
+
+    /**
+     * Keep the log under MAX_SEGMENTS when the caller never idles.
+     */
+
+    private void bound() {
+        if (segments.size() > MAX_SEGMENTS) {
+            int behind = furthestBehind();
+            if (behind >= 0)
+                catchUp(behind, CATCH_UP_SLICE, null);
+            recycle();
+        }
+    }
+
+    /**
+     * @return The index of the algorithm with the most notes to catch up on, or -1 if
+     * every algorithm is up to date.
+     */
+
+    private int furthestBehind() {
+        int behind = -1;
+        for (int i = 0; i < applied.length; i++) {
+            if (applied[i] < end && (behind < 0 || applied[i] < applied[behind]))
+                behind = i;
+        }
+        return behind;
+    }
+
+    /**
+     * Drop the segments every algorithm has read.
+     */
+
+    private void recycle() {
+        long read = end;
+        for (long position : applied) {
+            read = Math.min(read, position);
+        }
+        while (read - first >= SEGMENT_SIZE) {
+            retire(segments.remove(0));
+            first += SEGMENT_SIZE;
+        }
+    }
+
+    private void retire(int[] segment) {
+        if (spare.size() < SPARE_SEGMENTS)
+            spare.add(segment);
+    }
+}
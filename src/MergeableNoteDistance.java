@@ -0,0 +1,36 @@
+/**
+ * The MergeableNoteDistance class is NoteDistance without decay. Its note counts and
+ * velocity sums do not depend on the order notes were played in, so instances fed
+ * different files can be combined. A decaying NoteDistance cannot be, so only this
+ * class is a MergeablePaletteAlgorithm.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class MergeableNoteDistance extends NoteDistance implements MergeablePaletteAlgorithm {
+
+    /**
+     * Constructor for the MergeableNoteDistance class.
+     * @param colors The number of colors in the palette.
+     * @param byDuration Whether each note counts once per second it sounded, rather
+     *                   than once per time it was struck.
+     */
+
+    public MergeableNoteDistance(int colors, boolean byDuration) {
+        super(0, colors, byDuration);
+    }
+
+    /**
+     * Implements MergeablePaletteAlgorithm combine method. Add the note counts and
+     * velocity totals of another MergeableNoteDistance to this one.
+     * @param other Another MergeableNoteDistance that weights notes the same way.
+     */
+
+    public void combine(MergeablePaletteAlgorithm other) {
+        if (!(other instanceof MergeableNoteDistance)) {
+            throw new IllegalArgumentException("Cannot combine NoteDistance with " + other.getClass().getName());
+        }
+        combineCounts((MergeableNoteDistance) other);
+    }
+}
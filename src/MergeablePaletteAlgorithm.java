@@ -0,0 +1,22 @@
+/**
+ * The MergeablePaletteAlgorithm interface is implemented by algorithms whose state
+ * is a commutative summary of the notes added, such as counts and sums. Two
+ * instances fed different notes can then be combined into the instance that would
+ * have resulted from feeding one of them all the notes, so a large corpus can be
+ * split across cores and reduced file by file.
+ *
+ * Only algorithms whose provider declares the MERGEABLE capability may be combined.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+interface MergeablePaletteAlgorithm extends PaletteAlgorithm {
+
+    /**
+     * Add every note another instance has been given to this one, and update the
+     * palette. The other instance is not changed.
+     * @param other An instance of the same algorithm, created by the same provider.
+     */
+    void combine(MergeablePaletteAlgorithm other);
+}
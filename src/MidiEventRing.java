@@ -0,0 +1,172 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The MidiEventRing class is a single-producer, single-consumer ring buffer of
+ * short MIDI messages. The producer is the MIDI driver thread and the consumer is
+ * the thread feeding the palette algorithms.
+ *
+ * Events are stored as primitives (status, data1 and data2 packed into one int, plus
+ * a nanoTime stamp), so offering and draining never allocate. When the ring is full
+ * the newest event is dropped and counted rather than blocking the driver.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class MidiEventRing {
+
+    /**
+     * Receives drained events on the consumer thread.
+     */
+    public interface Handler {
+        void onEvent(int status, int data1, int data2, long nanoTime);
+    }
+
+    private final int[] messages;
+    private final long[] times;
+    private final int mask;
+
+    // head is only written by the consumer, tail only by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Thread waiter;
+
+    /**
+     * Constructor for the MidiEventRing class.
+     * @param capacity The number of events held, rounded up to a power of two.
+     */
+
+    public MidiEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        messages = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Append an event. Only call this from the producer thread.
+     * @param status The MIDI status byte (command and channel).
+     * @param data1 The first data byte, e.g. the key.
+     * @param data2 The second data byte, e.g. the velocity.
+     * @param nanoTime The time the event was received, from System.nanoTime().
+     * @return false if the ring was full and the event was dropped.
+     */
+
+    public boolean offer(int status, int data1, int data2, long nanoTime) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int slot = (int) t & mask;
+        messages[slot] = (status & 0xff) << 16 | (data1 & 0xff) << 8 | (data2 & 0xff);
+        times[slot] = nanoTime;
+        // a full store, so a consumer about to park either sees the event or is seen as waiting
+        tail.set(t + 1);
+
+        Thread w = waiter;
+        if (w != null)
+            LockSupport.unpark(w);
+        return true;
+    }
+
+    /**
+     * Pass up to limit pending events to the handler, oldest first. Only call this
+     * from the consumer thread.
+     * @param handler Receives each event.
+     * @param limit The maximum number of events to drain.
+     * @return The number of events drained.
+     */
+
+    public int drain(Handler handler, int limit) {
+        long h = head.get();
+        long available = tail.get() - h;
+        int count = (int) Math.min(available, limit);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (h + i) & mask;
+            int message = messages[slot];
+            handler.onEvent(message >>> 16, (message >>> 8) & 0xff, message & 0xff, times[slot]);
+        }
+        head.lazySet(h + count);
+        return count;
+    }
+
+    /**
+     * Park the calling consumer thread until an event is offered or it is interrupted.
+     */
+
+    public void await() {
+        waiter = Thread.currentThread();
+        if (isEmpty())
+            LockSupport.park(this);
+        waiter = null;
+    }
+
+    /**
+     * Park the calling thread until an event is offered to any of the rings, for a
+     * consumer that drains several rings.
+     * @param rings The rings consumed by the calling thread.
+     */
+
+    public static void awaitAny(MidiEventRing[] rings) {
+        Thread current = Thread.currentThread();
+        boolean empty = true;
+        for (MidiEventRing ring : rings) {
+            ring.waiter = current;
+            empty &= ring.isEmpty();
+        }
+        if (empty)
+            LockSupport.park(rings);
+        for (MidiEventRing ring : rings) {
+            ring.waiter = null;
+        }
+    }
+
+    /**
+     * Pass up to limit pending events of several rings to the handler in the order
+     * they were received, by merging the rings on their timestamps. Only call this
+     * from the thread consuming all of the rings.
+     * @param rings The rings to drain.
+     * @param handler Receives each event.
+     * @param limit The maximum number of events to drain.
+     * @return The number of events drained.
+     */
+
+    public static int drainMerged(MidiEventRing[] rings, Handler handler, int limit) {
+        int drained = 0;
+        while (drained < limit) {
+            // the ring whose oldest event is the earliest; few devices, so a scan beats a heap
+            MidiEventRing first = null;
+            long firstTime = 0;
+            for (MidiEventRing ring : rings) {
+                long h = ring.head.get();
+                if (ring.tail.get() == h)
+                    continue;
+                long time = ring.times[(int) h & ring.mask];
+                if (first == null || time - firstTime < 0) {
+                    first = ring;
+                    firstTime = time;
+                }
+            }
+            if (first == null)
+                break;
+            drained += first.drain(handler, 1);
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * @return The number of events dropped because the ring was full.
+     */
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
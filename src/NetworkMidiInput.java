@@ -0,0 +1,692 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The NetworkMidiInput class receives MIDI from other machines on the network and
+ * queues it in a MidiEventRing, the same way the local device's messages are
+ * queued, so network notes reach the algorithms through interpretMidi() too.
+ *
+ * One thread waits on a Selector over non-blocking DatagramChannels and decodes
+ * each packet in place from a single direct buffer, so receiving does not
+ * allocate per packet. Two protocols are understood:
+ *
+ *     RTP-MIDI   (RFC 6295, AppleMIDI) the MIDI command section of each RTP packet,
+ *                with running status and delta times; system exclusive and the
+ *                recovery journal are skipped. AppleMIDI invitations and clock
+ *                synchronization are answered, so macOS network sessions and
+ *                rtpMIDI can connect.
+ *     OSC        messages and bundles. An address ending in /note takes the
+ *                arguments note, velocity and an optional channel from 1 to 16;
+ *                /noteoff takes note and optional velocity and channel. A float
+ *                velocity is read as 0.0 to 1.0, the way touch controllers send
+ *                it. Any argument of the OSC MIDI type 'm' is queued as it is.
+ *
+ * Usage:
+ *     NetworkMidiInput listen rtp|osc &lt;port&gt;
+ *     NetworkMidiInput send rtp|osc &lt;host&gt; &lt;port&gt; [notes]
+ *     NetworkMidiInput loopback [rtp port] [osc port]
+ *
+ * loopback sends notes over both protocols to this machine and checks that every
+ * event arrives.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class NetworkMidiInput implements Runnable, AutoCloseable {
+
+    /**
+     * The protocols a port can be bound with.
+     */
+    public enum Protocol {
+        RTP_MIDI, OSC
+    }
+
+    // the largest UDP payload
+    private static final int MAX_DATAGRAM = 65536;
+    // packets taken from one channel before the others get a turn
+    private static final int DRAIN_PACKETS = 64;
+    private static final int MAX_BUNDLE_DEPTH = 8;
+    private static final int RECEIVE_BUFFER = 1 << 20;
+
+    // AppleMIDI session commands
+    private static final int APPLE_SIGNATURE = 0xffff;
+    private static final int INVITATION = 0x494e; // IN
+    private static final int ACCEPT = 0x4f4b; // OK
+    private static final int CLOCK = 0x434b; // CK
+    private static final int APPLE_VERSION = 2;
+    private static final byte[] SESSION_NAME = "Palette\0".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] BUNDLE = "#bundle\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOTE = "/note".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOTE_OFF = "/noteoff".getBytes(StandardCharsets.US_ASCII);
+
+    private final MidiEventRing ring;
+    private final Selector selector;
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+    private final ByteBuffer reply = ByteBuffer.allocateDirect(64);
+    private final int ssrc = new Random().nextInt();
+    private final long startNanos = System.nanoTime();
+
+    private DatagramChannel[] channels = new DatagramChannel[0];
+    private Protocol[] protocols = new Protocol[0];
+    private Thread thread;
+    private volatile boolean running;
+
+    // only written by the receiving thread
+    private volatile long packets;
+    private volatile long malformed;
+
+    /**
+     * Constructor for the NetworkMidiInput class.
+     * @param ring The ring decoded events are offered to. This input's thread is its
+     *             only producer, so it must not be shared with another input.
+     */
+
+    public NetworkMidiInput(MidiEventRing ring) throws IOException {
+        this.ring = ring;
+        selector = Selector.open();
+    }
+
+    /**
+     * Listen on a UDP port on every interface. Call this before start().
+     * @param port The port. RTP-MIDI binds this control port and the data port after it, as AppleMIDI expects.
+     * @param protocol The protocol sent to the port.
+     */
+
+    public synchronized void bind(int port, Protocol protocol) throws IOException {
+        if (thread != null)
+            throw new IllegalStateException("Already started");
+
+        open(port, protocol);
+        if (protocol == Protocol.RTP_MIDI)
+            open(port + 1, protocol);
+    }
+
+    private void open(int port, Protocol protocol) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            // room for a burst of packets while the thread is busy decoding
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        channels = Arrays.copyOf(channels, channels.length + 1);
+        protocols = Arrays.copyOf(protocols, protocols.length + 1);
+        channels[channels.length - 1] = channel;
+        protocols[protocols.length - 1] = protocol;
+    }
+
+    /**
+     * Start the receiving thread.
+     */
+
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(this, "Palette network MIDI");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                // every channel is drained below, so the selected keys are not needed
+                selector.selectedKeys().clear();
+                for (int i = 0; i < channels.length; i++) {
+                    drain(channels[i], protocols[i]);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running)
+                System.out.println("Network MIDI input stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop receiving and close every port.
+     */
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.close();
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The number of packets received.
+     */
+
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * @return The number of packets that could not be decoded.
+     */
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * Receive and decode the packets waiting on a channel.
+     */
+
+    private void drain(DatagramChannel channel, Protocol protocol) throws IOException {
+        for (int i = 0; i < DRAIN_PACKETS; i++) {
+            packet.clear();
+            // the JDK reuses the sender's address while it does not change
+            SocketAddress sender = channel.receive(packet);
+            if (sender == null)
+                return;
+            long now = System.nanoTime();
+            packet.flip();
+            packets++;
+
+            boolean ok = protocol == Protocol.RTP_MIDI
+                    ? decodeRtp(channel, sender, now)
+                    : decodeOsc(0, packet.limit(), now, 0);
+            if (!ok)
+                malformed++;
+        }
+    }
+
+    /**
+     * Decode an RTP-MIDI packet, or answer an AppleMIDI session packet.
+     * @return false if the packet is malformed.
+     */
+
+    private boolean decodeRtp(DatagramChannel channel, SocketAddress sender, long now) throws IOException {
+        ByteBuffer buf = packet;
+        int limit = buf.limit();
+        if (limit >= 4 && (buf.getShort(0) & 0xffff) == APPLE_SIGNATURE)
+            return answerSession(channel, sender);
+
+        // RTP header: version, CSRC count and extension, then 12 fixed bytes
+        if (limit < 13)
+            return false;
+        int first = buf.get(0) & 0xff;
+        if (first >>> 6 != 2)
+            return false;
+        int p = 12 + 4 * (first & 0x0f);
+        if ((first & 0x10) != 0) {
+            if (p + 4 > limit)
+                return false;
+            p += 4 + 4 * (buf.getShort(p + 2) & 0xffff);
+        }
+        if (p >= limit)
+            return false;
+
+        // MIDI command section header: B (long length), J (journal), Z (first delta), P, length
+        int header = buf.get(p++) & 0xff;
+        int length = header & 0x0f;
+        if ((header & 0x80) != 0) {
+            if (p >= limit)
+                return false;
+            length = (length << 8) | (buf.get(p++) & 0xff);
+        }
+        int end = p + length;
+        if (end > limit)
+            return false;
+
+        boolean delta = (header & 0x20) != 0;
+        int running = 0;
+        while (p < end) {
+            if (delta) {
+                // delta time, at most four bytes; only the order of commands is used
+                int vlqEnd = p + 4;
+                while (p < end && (buf.get(p) & 0x80) != 0) {
+                    if (++p >= vlqEnd)
+                        return false;
+                }
+                p++;
+                if (p >= end)
+                    return false;
+            }
+            delta = true;
+
+            int b = buf.get(p) & 0xff;
+            if (b >= 0xf8) {
+                // real-time, leaves running status alone
+                p++;
+                continue;
+            }
+            if (b == 0xf0 || b == 0xf7 || b == 0xf4) {
+                // system exclusive segment, up to its closing F0, F7 or F4
+                p++;
+                while (p < end) {
+                    int c = buf.get(p++) & 0xff;
+                    if (c == 0xf0 || c == 0xf7 || c == 0xf4)
+                        break;
+                }
+                running = 0;
+                continue;
+            }
+            if (b >= 0xf0) {
+                // system common: F1 and F3 have one data byte, F2 two
+                p += 1 + (b == 0xf2 ? 2 : (b == 0xf1 || b == 0xf3) ? 1 : 0);
+                running = 0;
+                continue;
+            }
+
+            if (b >= 0x80) {
+                running = b;
+                p++;
+            } else if (running == 0) {
+                return false;
+            }
+            int command = running & 0xf0;
+            int dataBytes = (command == 0xc0 || command == 0xd0) ? 1 : 2;
+            if (p + dataBytes > end)
+                return false;
+            int data1 = buf.get(p) & 0x7f;
+            int data2 = dataBytes == 2 ? buf.get(p + 1) & 0x7f : 0;
+            ring.offer(running, data1, data2, now);
+            p += dataBytes;
+        }
+        return true;
+    }
+
+    /**
+     * Answer an AppleMIDI invitation or clock synchronization packet.
+     * @return false if the packet is malformed.
+     */
+
+    private boolean answerSession(DatagramChannel channel, SocketAddress sender) throws IOException {
+        ByteBuffer buf = packet;
+        int command = buf.getShort(2) & 0xffff;
+        reply.clear();
+
+        if (command == INVITATION) {
+            if (buf.limit() < 16)
+                return false;
+            reply.putShort((short) APPLE_SIGNATURE).putShort((short) ACCEPT)
+                    .putInt(APPLE_VERSION).putInt(buf.getInt(8)).putInt(ssrc).put(SESSION_NAME);
+        } else if (command == CLOCK) {
+            if (buf.limit() < 36)
+                return false;
+            // the initiator sends count 0 and 2; only count 0 is answered, with our time
+            if (buf.get(8) != 0)
+                return true;
+            // timestamps are in units of 100 microseconds
+            long timestamp = (System.nanoTime() - startNanos) / 100_000;
+            reply.putShort((short) APPLE_SIGNATURE).putShort((short) CLOCK).putInt(ssrc)
+                    .put((byte) 1).put((byte) 0).putShort((short) 0)
+                    .putLong(buf.getLong(12)).putLong(timestamp).putLong(0);
+        } else {
+            // the session ends with BY, and receiver feedback needs no answer
+            return true;
+        }
+
+        reply.flip();
+        channel.send(reply, sender);
+        return true;
+    }
+
+    /**
+     * Decode an OSC message or bundle.
+     * @param start The position of the packet or bundle element.
+     * @param end The position after it.
+     * @param depth The number of bundles it is nested in.
+     * @return false if it is malformed.
+     */
+
+    private boolean decodeOsc(int start, int end, long now, int depth) {
+        ByteBuffer buf = packet;
+        if (matches(start, end, BUNDLE)) {
+            if (depth >= MAX_BUNDLE_DEPTH)
+                return false;
+            // #bundle, a time tag, then elements each prefixed by their size
+            int p = start + BUNDLE.length + 8;
+            while (p + 4 <= end) {
+                int size = buf.getInt(p);
+                p += 4;
+                if (size < 0 || size > end - p)
+                    return false;
+                if (!decodeOsc(p, p + size, now, depth + 1))
+                    return false;
+                p += size;
+            }
+            return p == end;
+        }
+
+        int addressEnd = indexOfZero(start, end);
+        if (addressEnd < 0 || buf.get(start) != '/')
+            return false;
+        int kind = endsWith(start, addressEnd, NOTE_OFF) ? 2 : endsWith(start, addressEnd, NOTE) ? 1 : 0;
+
+        int tags = start + align(addressEnd + 1 - start);
+        if (tags >= end || buf.get(tags) != ',')
+            return true; // no arguments
+        int tagsEnd = indexOfZero(tags, end);
+        if (tagsEnd < 0)
+            return false;
+        int p = start + align(tagsEnd + 1 - start);
+
+        // the first three numbers, for /note and /noteoff
+        int numbers = 0;
+        int value0 = 0;
+        int value1 = 0;
+        int value2 = 0;
+
+        for (int t = tags + 1; t < tagsEnd; t++) {
+            char tag = (char) buf.get(t);
+            int value;
+            switch (tag) {
+                case 'i':
+                    if (p + 4 > end)
+                        return false;
+                    value = buf.getInt(p);
+                    p += 4;
+                    break;
+                case 'f':
+                    if (p + 4 > end)
+                        return false;
+                    float f = buf.getFloat(p);
+                    p += 4;
+                    value = numbers == 1 && f >= 0.0f && f <= 1.0f ? Math.round(f * 127) : Math.round(f);
+                    break;
+                case 'm':
+                    // port, status, data1, data2
+                    if (p + 4 > end)
+                        return false;
+                    int status = buf.get(p + 1) & 0xff;
+                    if (status >= 0x80 && status < 0xf0)
+                        ring.offer(status, buf.get(p + 2) & 0x7f, buf.get(p + 3) & 0x7f, now);
+                    p += 4;
+                    continue;
+                case 'c':
+                case 'r':
+                    p += 4;
+                    continue;
+                case 'h':
+                case 't':
+                case 'd':
+                    p += 8;
+                    continue;
+                case 's':
+                case 'S':
+                    int stringEnd = indexOfZero(p, end);
+                    if (stringEnd < 0)
+                        return false;
+                    p = start + align(stringEnd + 1 - start);
+                    continue;
+                case 'b':
+                    if (p + 4 > end)
+                        return false;
+                    int blob = buf.getInt(p);
+                    if (blob < 0 || blob > end - p - 4)
+                        return false;
+                    p += 4 + align(blob);
+                    continue;
+                case 'T':
+                case 'F':
+                case 'N':
+                case 'I':
+                    continue;
+                default:
+                    // an unknown type has an unknown size, so nothing after it can be read
+                    return false;
+            }
+
+            if (numbers == 0)
+                value0 = value;
+            else if (numbers == 1)
+                value1 = value;
+            else if (numbers == 2)
+                value2 = value;
+            numbers++;
+        }
+        if (p > end)
+            return false;
+
+        if (kind == 0)
+            return true;
+        if (numbers < (kind == 1 ? 2 : 1))
+            return false;
+
+        int note = clamp(value0);
+        int velocity = numbers > 1 ? clamp(value1) : 0;
+        int channel = numbers > 2 ? Math.max(1, Math.min(16, value2)) - 1 : 0;
+        boolean on = kind == 1 && velocity > 0;
+        ring.offer((on ? 0x90 : 0x80) | channel, note, velocity, now);
+        return true;
+    }
+
+    private boolean matches(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (packet.get(start + i) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean endsWith(int start, int end, byte[] suffix) {
+        return end - start >= suffix.length && matches(end - suffix.length, end, suffix);
+    }
+
+    private int indexOfZero(int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (packet.get(i) == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(127, value));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("listen")) {
+            listen(protocolOf(args[1]), Integer.parseInt(args[2]));
+        } else if (args.length >= 4 && args[0].equals("send")) {
+            int notes = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+            send(protocolOf(args[1]), new InetSocketAddress(args[2], Integer.parseInt(args[3])), notes, 100);
+        } else if (args.length >= 1 && args[0].equals("loopback")) {
+            int rtpPort = args.length > 1 ? Integer.parseInt(args[1]) : 5004;
+            int oscPort = args.length > 2 ? Integer.parseInt(args[2]) : 9000;
+            System.exit(loopback(rtpPort, oscPort) ? 0 : 1);
+        } else {
+            System.err.println("Usage: NetworkMidiInput listen rtp|osc <port>");
+            System.err.println("       NetworkMidiInput send rtp|osc <host> <port> [notes]");
+            System.err.println("       NetworkMidiInput loopback [rtp port] [osc port]");
+            System.exit(2);
+        }
+    }
+
+    private static Protocol protocolOf(String name) {
+        if (name.equalsIgnoreCase("rtp"))
+            return Protocol.RTP_MIDI;
+        if (name.equalsIgnoreCase("osc"))
+            return Protocol.OSC;
+        throw new IllegalArgumentException("Unknown protocol " + name + ", expected rtp or osc");
+    }
+
+    /**
+     * Print every event received on a port until the process is stopped.
+     */
+
+    private static void listen(Protocol protocol, int port) throws IOException {
+        MidiEventRing ring = new MidiEventRing(4096);
+        NetworkMidiInput input = new NetworkMidiInput(ring);
+        input.bind(port, protocol);
+        input.start();
+        System.out.println("Listening for " + protocol + " on port " + port);
+
+        MidiEventRing.Handler print = (status, data1, data2, nanoTime) ->
+                System.out.printf("%02X %3d %3d%n", status, data1, data2);
+        while (true) {
+            if (ring.isEmpty()) {
+                ring.await();
+                continue;
+            }
+            ring.drain(print, 256);
+        }
+    }
+
+    /**
+     * Send a rising scale of notes, each a note on followed by its note off.
+     * @param protocol The protocol to send.
+     * @param target Where to send it; for RTP-MIDI the control port, as given to bind().
+     * @param notes The number of notes.
+     * @param gapMillis The time between notes.
+     */
+
+    private static void send(Protocol protocol, InetSocketAddress target, int notes, long gapMillis)
+            throws IOException, InterruptedException {
+        int[] scale = {0, 2, 4, 5, 7, 9, 11};
+        ByteBuffer buf = ByteBuffer.allocateDirect(256);
+        if (protocol == Protocol.RTP_MIDI)
+            target = new InetSocketAddress(target.getAddress(), target.getPort() + 1);
+        try (DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)) {
+            int ssrc = new Random().nextInt();
+            for (int i = 0; i < notes; i++) {
+                int note = 60 + 12 * (i / scale.length) % 36 + scale[i % scale.length];
+                int velocity = 64 + i % 48;
+                int channelNumber = i % 4;
+                buf.clear();
+                if (protocol == Protocol.RTP_MIDI) {
+                    // note on, then its note off by running status a delta time of 0 later
+                    buf.put((byte) 0x80).put((byte) 97).putShort((short) i).putInt(i * 1000).putInt(ssrc);
+                    buf.put((byte) 6).put((byte) (0x90 | channelNumber)).put((byte) note).put((byte) velocity)
+                            .put((byte) 0).put((byte) note).put((byte) 0);
+                } else if (i % 2 == 0) {
+                    // a /note message then a bundle holding a raw MIDI note off
+                    putOscNote(buf, note, velocity, channelNumber);
+                    buf.flip();
+                    channel.send(buf, target);
+                    buf.clear();
+                    buf.put(BUNDLE).putLong(1);
+                    int sizeAt = buf.position();
+                    buf.putInt(0);
+                    putString(buf, "/midi");
+                    putString(buf, ",m");
+                    buf.put((byte) 0).put((byte) (0x80 | channelNumber)).put((byte) note).put((byte) 0);
+                    buf.putInt(sizeAt, buf.position() - sizeAt - 4);
+                } else {
+                    // a /note message with a float velocity, then /noteoff
+                    putString(buf, "/palette/note");
+                    putString(buf, ",ifi");
+                    buf.putInt(note).putFloat(velocity / 127.0f).putInt(channelNumber + 1);
+                    buf.flip();
+                    channel.send(buf, target);
+                    buf.clear();
+                    putString(buf, "/palette/noteoff");
+                    putString(buf, ",iii");
+                    buf.putInt(note).putInt(0).putInt(channelNumber + 1);
+                }
+                buf.flip();
+                channel.send(buf, target);
+                if (gapMillis > 0)
+                    Thread.sleep(gapMillis);
+            }
+        }
+    }
+
+    private static void putOscNote(ByteBuffer buf, int note, int velocity, int channelNumber) {
+        putString(buf, "/note");
+        putString(buf, ",iii");
+        buf.putInt(note).putInt(velocity).putInt(channelNumber + 1);
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        buf.put(bytes);
+        for (int i = bytes.length; i < align(bytes.length + 1); i++) {
+            buf.put((byte) 0);
+        }
+    }
+
+    /**
+     * Send notes over both protocols to this machine and check they all arrive.
+     * @return true if every event arrived, in order, with its data intact.
+     */
+
+    private static boolean loopback(int rtpPort, int oscPort) throws IOException, InterruptedException {
+        final int notes = 500;
+        MidiEventRing ring = new MidiEventRing(8192);
+        long[] counts = new long[2]; // note ons, note offs
+        long[] checksum = new long[1];
+        MidiEventRing.Handler count = (status, data1, data2, nanoTime) -> {
+            boolean on = (status & 0xf0) == 0x90 && data2 > 0;
+            counts[on ? 0 : 1]++;
+            checksum[0] = checksum[0] * 31 + (status << 16 | data1 << 8 | (on ? 1 : 0));
+        };
+
+        try (NetworkMidiInput input = new NetworkMidiInput(ring)) {
+            input.bind(rtpPort, Protocol.RTP_MIDI);
+            input.bind(oscPort, Protocol.OSC);
+            input.start();
+
+            InetAddress local = InetAddress.getLoopbackAddress();
+            long start = System.nanoTime();
+            // one protocol at a time, so the events arrive in the order they were sent
+            send(Protocol.RTP_MIDI, new InetSocketAddress(local, rtpPort), notes, 0);
+            receive(ring, count, counts, 2L * notes);
+            send(Protocol.OSC, new InetSocketAddress(local, oscPort), notes, 0);
+            receive(ring, count, counts, 4L * notes);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            // the same notes sent as one stream, for comparison
+            long expected = 0;
+            int[] scale = {0, 2, 4, 5, 7, 9, 11};
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < notes; i++) {
+                    int note = 60 + 12 * (i / scale.length) % 36 + scale[i % scale.length];
+                    int channelNumber = i % 4;
+                    expected = expected * 31 + ((0x90 | channelNumber) << 16 | note << 8 | 1);
+                    // RTP-MIDI sends note offs as note ons of velocity 0
+                    int off = pass == 0 ? 0x90 : 0x80;
+                    expected = expected * 31 + ((off | channelNumber) << 16 | note << 8);
+                }
+            }
+
+            boolean ok = counts[0] == 2L * notes && counts[1] == 2L * notes && checksum[0] == expected
+                    && input.getMalformed() == 0 && ring.getDropped() == 0;
+            System.out.printf("%d packets, %d note ons, %d note offs, %d malformed, %d dropped in %d ms: %s%n",
+                    input.getPackets(), counts[0], counts[1], input.getMalformed(), ring.getDropped(), millis,
+                    ok ? "ok" : "MISMATCH");
+            return ok;
+        }
+    }
+
+    private static void receive(MidiEventRing ring, MidiEventRing.Handler handler, long[] counts, long total)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (counts[0] + counts[1] < total && System.currentTimeMillis() < deadline) {
+            if (ring.drain(handler, 256) == 0)
+                Thread.sleep(1);
+        }
+    }
+}
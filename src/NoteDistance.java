@@ -1,7 +1,5 @@
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
 
 /**
  * The NoteDistance class is the first implemented algorithm for generating a color
@@ -9,13 +7,35 @@ import java.util.Random;
  *
  * The algorithm uses a random seed based on the most played note. From this 'base
  * note', the algorithm determines the 'color distance' of the next-most popular
- * note. It then repeats for up to 4 notes, generating 5 colors.
+ * note. It then repeats for up to 4 notes, generating 5 colors. Larger palettes take
+ * one color per note played, up to all 12; the remaining colors stay white.
  *
  * The algorithm reliably creates a color palette for any MIDI sequence, however,
  * does not work well in real-time, due to the base note changing frequently.
  *
+ * The palette is maintained incrementally: running velocity sums replace the full
+ * velocity history, and the ranking of notes by count is repaired in place on each
+ * add, so every note costs the same no matter how long the session has been running.
+ *
+ * For long live sessions the algorithm can be given a half-life, measured in notes
+ * played. Each note then counts for twice as much as the note played a half-life
+ * earlier, so the palette follows what is being played now instead of settling on
+ * the first hour's most played note. Decay is applied lazily: new notes are added
+ * with a growing weight, and the totals are rescaled once the weight gets large.
+ *
+ * Without decay the counts and velocity sums do not depend on the order notes were
+ * played in; MergeableNoteDistance, which cannot decay, combines instances fed
+ * different files.
+ *
+ * Notes can also be weighted by how long they sound instead of how often they are
+ * struck. Each note is then counted when it is released, one for every second it
+ * sounded, so a held chord outweighs a quick run of passing notes.
+ *
+ * Saturation and brightness both follow the note's average velocity, from 0 to 1,
+ * and colors are converted to RGB a whole palette at a time with PackedHSB.
+ *
  * @author Aaron Weiss, Alex Cretella
- * @version 1.0
+ * @version 1.7
  * @since 2018-11-18
  */
 
@@ -24,28 +44,122 @@ public class NoteDistance implements PaletteAlgorithm {
     // Store a history of notes played
     // [ 0  1   2  3   4  5  6   7  8   9  10  11 ]
     // [ C, C#, D, D#, E, F, F#, G, G#, A, A#,  B ]
-    private int[] noteCounts;
-    private ArrayList<Integer>[] velocityHistory;
+    // When decaying, counts are kept scaled by the weight of the latest note
+    private double[] noteCounts;
+    private double[] velocitySums;
+    private float[] averageVelocity;
+
+    // weight of the next note, and how much it grows per note when decaying
+    private double increment;
+    private final double growth;
+
+    // notes ordered by count, most played first; ties keep keyboard order
+    private int[] ranking;
+    private int[] rankOf;
+    private int uniqueNotes;
+
+    private float[] sortedVel;
     private HSBColor[] palette;
+    // the set colors in PackedHSB form, converted to RGB together
+    private int[] packed;
     private static final int MAX_VELOCITY = 127;
-    private static final int NUM_COLORS = 5; //predetermined number of colors for the final palette
+    private final int numColors; //number of colors in the final palette
+    // whether notes count by how long they sound, through release(), rather than in add()
+    private final boolean byDuration;
+    // how many colors at the front of the palette may not be white
+    private int colored;
+
+    // constants of java.util.Random, so the base hue can be derived without allocating one
+    private static final long RANDOM_MULTIPLIER = 0x5DEECE66DL;
+    private static final long RANDOM_ADDEND = 0xBL;
+    private static final long RANDOM_MASK = (1L << 48) - 1;
+
+    private static final double RESCALE_LIMIT = 1e100;
+    private static final double FORGOTTEN = 1e-6; // notes whose count decays below this are dropped
 
     /**
      * Constructor for the NoteDistance class. Prepare storage for notes played,
-     * velocity history, and initialize color palette.
+     * velocity totals, and initialize color palette. Every note counts the same.
      */
 
     public NoteDistance() {
-        noteCounts = new int[12];
-        velocityHistory = (ArrayList<Integer>[]) new ArrayList[12];
-        //store velocities of each note in a vector to average at the end
+        this(0);
+    }
+
+    /**
+     * Constructor for a NoteDistance whose note counts and velocities decay over time.
+     * @param halfLife The number of notes after which a note counts half as much.
+     *                 0 or less disables decay.
+     */
+
+    public NoteDistance(double halfLife) {
+        this(halfLife, 5);
+    }
+
+    /**
+     * Constructor for a NoteDistance with a palette of any size.
+     * @param halfLife The number of notes after which a note counts half as much.
+     *                 0 or less disables decay.
+     * @param colors The number of colors in the palette.
+     */
+
+    public NoteDistance(double halfLife, int colors) {
+        this(halfLife, colors, false);
+    }
+
+    /**
+     * Constructor for a NoteDistance that may weight notes by duration.
+     * @param halfLife The number of notes after which a note counts half as much.
+     *                 0 or less disables decay.
+     * @param colors The number of colors in the palette.
+     * @param byDuration Whether each note counts once per second it sounded, rather
+     *                   than once per time it was struck.
+     */
+
+    public NoteDistance(double halfLife, int colors, boolean byDuration) {
+        numColors = colors;
+        this.byDuration = byDuration;
+        growth = halfLife > 0 && !Double.isInfinite(halfLife) ? Math.pow(2.0, 1.0 / halfLife) : 1.0;
+
+        noteCounts = new double[12];
+        velocitySums = new double[12];
+        averageVelocity = new float[12];
+        sortedVel = new float[12];
+
+        ranking = new int[12];
+        rankOf = new int[12];
+
+        palette = new HSBColor[numColors];
+        for (int i = 0; i < numColors; i++) {
+            palette[i] = new HSBColor();
+        }
+        packed = new int[Math.min(numColors, 12)];
+
+        reset();
+    }
+
+    /**
+     * Implements PaletteAlgorithm reset method. Forget every note and return the
+     * palette to white, keeping the half-life.
+     */
+
+    public void reset() {
+        increment = 1.0;
+        uniqueNotes = 0;
         for (int i = 0; i < 12; i++) {
-            velocityHistory[i] = new ArrayList<>();
+            noteCounts[i] = 0;
+            velocitySums[i] = 0;
+            averageVelocity[i] = 0;
+            ranking[i] = i;
+            rankOf[i] = i;
         }
-        palette = new HSBColor[NUM_COLORS];
-        for (int i = 0; i < NUM_COLORS; i++) {
-            palette[i] = new HSBColor();
+
+        for (int i = 0; i < numColors; i++) {
+            palette[i].setHue(0.0f);
+            palette[i].setSaturation(0.0f);
+            palette[i].setBrightness(1.0f);
         }
+        colored = 0;
     }
 
     /**
@@ -59,127 +173,242 @@ public class NoteDistance implements PaletteAlgorithm {
      */
 
     public void add(int note, int velocity, int octave) {
-        noteCounts[note]++;
-        velocityHistory[note].add(velocity);
+        if (!byDuration)
+            count(note, velocity, 1.0);
+    }
+
+    /**
+     * Implements PaletteAlgorithm release method. When weighting by duration, the
+     * note is counted now, in proportion to how long it sounded.
+     * @param note The note released, from 0 to 11.
+     * @param velocity The velocity the note was struck with.
+     * @param octave The octave of the note.
+     * @param micros How long the note sounded, in microseconds.
+     */
+
+    public void release(int note, int velocity, int octave, long micros) {
+        if (byDuration && micros > 0)
+            count(note, velocity, micros / 1e6);
+    }
+
+    /**
+     * Count a note and update the palette.
+     * @param note The note, from 0 to 11.
+     * @param velocity The velocity of the note.
+     * @param weight How much the note counts, 1 for a struck note.
+     */
+
+    private void count(int note, int velocity, double weight) {
+        if (noteCounts[note] == 0)
+            uniqueNotes++;
+        noteCounts[note] += increment * weight;
+        velocitySums[note] += increment * weight * velocity;
+        averageVelocity[note] = (float)getAverageVelocity(note);
+
+        promote(note);
+        updatePalette();
+
+        if (growth != 1.0)
+            age();
+    }
+
+    /**
+     * Add the note counts and velocity totals of another NoteDistance to this one,
+     * then rank the notes and rebuild the palette. Only meaningful without decay,
+     * since decay depends on the order notes were played in, so it is only reached
+     * through MergeableNoteDistance.
+     * @param that Another NoteDistance without decay.
+     */
+
+    void combineCounts(NoteDistance that) {
+        if (byDuration != that.byDuration) {
+            throw new IllegalArgumentException("Cannot combine note counts with note durations");
+        }
+        if (that.uniqueNotes == 0)
+            return;
+
+        uniqueNotes = 0;
+        for (int i = 0; i < noteCounts.length; i++) {
+            noteCounts[i] += that.noteCounts[i];
+            velocitySums[i] += that.velocitySums[i];
+            averageVelocity[i] = (float)getAverageVelocity(i);
+            if (noteCounts[i] != 0)
+                uniqueNotes++;
+        }
+
+        // stable descending sort by count, which keeps keyboard order among ties
+        for (int i = 0; i < ranking.length; i++) {
+            int note = i;
+            int j = i;
+            while (j > 0 && noteCounts[ranking[j - 1]] < noteCounts[note]) {
+                ranking[j] = ranking[j - 1];
+                rankOf[ranking[j]] = j;
+                j--;
+            }
+            ranking[j] = note;
+            rankOf[note] = j;
+        }
+
         updatePalette();
     }
 
     /**
      * Implements PaletteAlgorithm getColor method. Uses the HSBColor getColor
      * method to retrieve Color objects of each color.
-     * @return colors An array of 5 Color objects.
+     * @return colors An array of Color objects, one per palette color.
      */
 
     public Color[] getColors() {
-        Color[] colors = new Color[5];
+        Color[] colors = new Color[numColors];
         for(int i = 0; i < colors.length; i++) {
             colors[i] = palette[i].getColor();
         }
         return colors;
     }
 
+    /**
+     * Implements PaletteAlgorithm getColors method without allocating.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @return The number of colors.
+     */
+
+    public int getColors(int[] rgb) {
+        for (int i = 0; i < colored; i++) {
+            packed[i] = palette[i].getPacked();
+        }
+        PackedHSB.toRGB(packed, 0, rgb, 0, colored);
+        // at most 12 colors are ever set, so a large palette is mostly white
+        Arrays.fill(rgb, colored, numColors, 0xffffff);
+        return numColors;
+    }
+
+    /**
+     * The promote method moves a note towards the front of the ranking after its
+     * count went up. Only notes with a lower count, or an equal count and a higher
+     * index, are passed, which is the same order a stable descending sort produces.
+     * @param note The note whose count just increased (0 to 11)
+     */
+
+    private void promote(int note) {
+        double count = noteCounts[note];
+        int i = rankOf[note];
+        while (i > 0) {
+            int ahead = ranking[i - 1];
+            if (noteCounts[ahead] > count || (noteCounts[ahead] == count && ahead < note))
+                break;
+            ranking[i] = ahead;
+            rankOf[ahead] = i;
+            i--;
+        }
+        ranking[i] = note;
+        rankOf[note] = i;
+    }
+
     /**
      * The updatePalette method is used to calculate the color palette, using the
-     * current count of notes, and velocity history.
+     * current ranking of notes and their average velocities.
      */
 
     private void updatePalette() {
 
-        // sort notes to prepare for algorithm
-        int[] sortedCounts = noteCounts.clone();
-
-        // keep track of what notes are what after sorting
-        int[] noteTracker = new int[12];
-        for(int i = 0; i < noteTracker.length; i++)
-            noteTracker[i] = i;
-
-        // put the average velocities into the same order as our sorted notes
-        float[] sortedVel = new float[12];
-        for(int i = 0; i < sortedVel.length; i++)
-            sortedVel[i] = (float)getAverageVelocity(i);
-
-        // perform sorting
-        int n = sortedCounts.length;
-        for (int i = 0; i < n-1; i++) {
-            for (int j = 0; j < n-i-1; j++) {
-                if (sortedCounts[j] < sortedCounts[j+1]) {
-                    // swap temp and arr[i]
-                    int tempCount = sortedCounts[j];
-                    sortedCounts[j] = sortedCounts[j + 1];
-                    sortedCounts[j + 1] = tempCount;
-                    
-                    //Makes sure that a note's index in noteTracker matches where the note's count was moved in sortedCounts
-                    int tempTracker = noteTracker[j];
-                    noteTracker[j] = noteTracker[j + 1];
-                    noteTracker[j + 1] = tempTracker;
-                    
-                    //Makes sure that a note's velocity in sortedVel matches where the note was moved in sortedCounts
-                    float tempVel = sortedVel[j];
-                    sortedVel[j] = sortedVel[j + 1];
-                    sortedVel[j + 1] = tempVel;
-                }
-            }
+        // put the average velocities into the same order as our ranked notes
+        float maxVelocity = 0.0f;
+        for (int i = 0; i < sortedVel.length; i++) {
+            sortedVel[i] = averageVelocity[ranking[i]];
+            if (sortedVel[i] > maxVelocity)
+                maxVelocity = sortedVel[i];
         }
 
-        // count the number of unique notes played
-        int uniqueNotes = 0;
-        for (int i = 0; i < sortedCounts.length; i++) {
-            if (sortedCounts[i] > 0)
-                uniqueNotes++;
-        }
+        int baseNote = ranking[0];
+        double baseCount = getCount(baseNote);
 
         // get base color based on most played note
-        Random rand = new Random(sortedCounts[0]);
         // returns a number between 0.0f and 1.0f, for our base hue value
-        float baseHue = rand.nextFloat();
+        float baseHue = seededFloat(Math.round(baseCount));
 
         palette[0].setHue(baseHue);
 
-        float[] normalizedVelocity = normalizeVector(sortedVel);
+        float normalizedVelocity = sortedVel[0] / maxVelocity;
 
-        palette[0].setSaturation(normalizedVelocity[0] * ((sortedVel[0] * 100) / MAX_VELOCITY));
-        palette[0].setBrightness(normalizedVelocity[0] * ((sortedVel[0] * 100) / MAX_VELOCITY));
+        palette[0].setSaturation(normalizedVelocity * (sortedVel[0] / MAX_VELOCITY));
+        palette[0].setBrightness(normalizedVelocity * (sortedVel[0] / MAX_VELOCITY));
 
-        // perform algorithm 0-4 times, depending on number of unique notes
-        for (int i = 1; i < 5 && i < uniqueNotes; i++) {
-            int distance = getNoteDistance(noteTracker[0], noteTracker[i]);
+        // perform algorithm once per unique note after the first, as far as the palette goes
+        int used = Math.min(numColors, Math.max(1, uniqueNotes));
+        for (int i = 1; i < used; i++) {
+            int distance = getNoteDistance(baseNote, ranking[i]);
 
-            float normalizedOffset = (float)sortedCounts[i] / (float)sortedCounts[0];
+            float normalizedOffset = (float)getCount(ranking[i]) / (float)baseCount;
 
             float newHueDistance = ((float)1 / (float)noteCounts.length) * (float)distance * normalizedOffset;
 
             float newHue = (baseHue + newHueDistance) % 1.0f;
 
+            normalizedVelocity = sortedVel[i] / maxVelocity;
+
             palette[i].setHue(newHue);
-            palette[i].setSaturation(normalizedVelocity[i] * ((sortedVel[i] * 100) / MAX_VELOCITY) );
+            palette[i].setSaturation(normalizedVelocity * (sortedVel[i] / MAX_VELOCITY));
+
+            palette[i].setBrightness(normalizedVelocity * (sortedVel[i] / MAX_VELOCITY));
+        }
 
-            palette[i].setBrightness(normalizedVelocity[i] * ((sortedVel[i] * 100) / MAX_VELOCITY) );
+        // colors of notes that were forgotten go back to white; the rest already are
+        for (int i = used; i < colored; i++) {
+            palette[i].setHue(0.0f);
+            palette[i].setSaturation(0.0f);
+            palette[i].setBrightness(1.0f);
         }
+        colored = used;
     }
 
     /**
-     * The normalizeVector method is used to normalize values of an array according
-     * to the highest value stored in that array.
-     * @return array The normalized array.
+     * The age method grows the weight given to the next note. Once the weight gets
+     * large, all totals are divided by it, and notes that have decayed to nothing
+     * are forgotten.
      */
 
-    private float[] normalizeVector(float array[]) {
-        // clone our array so that we don't modify the original
-        array = array.clone();
-
-        //first we find the note with the highest count
-        float maxValue = 0.0f;
-        for (int i = 0; i < array.length; i++) {
-            if (array[i] > maxValue)
-                maxValue = array[i];
+    private void age() {
+        increment *= growth;
+        if (increment < RESCALE_LIMIT)
+            return;
+
+        for (int i = 0; i < noteCounts.length; i++) {
+            noteCounts[i] /= increment;
+            velocitySums[i] /= increment;
+            if (noteCounts[i] != 0 && noteCounts[i] < FORGOTTEN) {
+                noteCounts[i] = 0;
+                velocitySums[i] = 0;
+                averageVelocity[i] = 0;
+                uniqueNotes--;
+            }
         }
-
-        //then divide each count by that max, in order to normalize
-        for (int i = 0; i < array.length; i++) {
-            array[i] /= maxValue;
+        increment = 1.0;
+
+        // forgotten notes now tie at zero, so restore keyboard order among them
+        for (int i = 1; i < ranking.length; i++) {
+            int note = ranking[i];
+            int j = i;
+            while (j > 0 && noteCounts[ranking[j - 1]] == noteCounts[note] && ranking[j - 1] > note) {
+                ranking[j] = ranking[j - 1];
+                rankOf[ranking[j]] = j;
+                j--;
+            }
+            ranking[j] = note;
+            rankOf[note] = j;
         }
+    }
 
-        return array;
+    /**
+     * Return the first float of a java.util.Random seeded with the given value,
+     * without allocating the Random.
+     * @param seed The seed.
+     * @return A number between 0.0f and 1.0f.
+     */
+
+    private static float seededFloat(long seed) {
+        long scrambled = (seed ^ RANDOM_MULTIPLIER) & RANDOM_MASK;
+        long next = (scrambled * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+        return (int)(next >>> (48 - 24)) / ((float)(1 << 24));
     }
 
     /**
@@ -205,7 +434,19 @@ public class NoteDistance implements PaletteAlgorithm {
      */
 
     private double getAverageVelocity(int note) {
-        return velocityHistory[note].stream().mapToInt(val -> val).average().orElse(0.0);
+        if (noteCounts[note] == 0)
+            return 0.0;
+        return velocitySums[note] / noteCounts[note];
+    }
+
+    /**
+     * Return how many times a note was played, after decay.
+     * @param note The index of the desired note (0 to 11)
+     * @return The count.
+     */
+
+    private double getCount(int note) {
+        return noteCounts[note] / increment;
     }
 
     /**
@@ -213,17 +454,21 @@ public class NoteDistance implements PaletteAlgorithm {
      */
 
     public void printMe() {
-        System.out.println(Arrays.toString(noteCounts));
         System.out.print("[");
-        for (int i = 0; i < velocityHistory.length; i++) {
+        for (int i = 0; i < noteCounts.length; i++) {
+            System.out.print(getCount(i) + (i < noteCounts.length - 1 ? ", " : ""));
+        }
+        System.out.println("]");
+        System.out.print("[");
+        for (int i = 0; i < noteCounts.length; i++) {
             Double avg = getAverageVelocity(i);
-            if (i < velocityHistory.length - 1)
+            if (i < noteCounts.length - 1)
                 System.out.print(avg +", ");
             else
                 System.out.print(avg);
         }
         System.out.println("]");
-        for(int i = 0; i < NUM_COLORS; i++)
+        for(int i = 0; i < numColors; i++)
             System.out.print("{" + palette[i].getString() + "} ");
     }
 
@@ -0,0 +1,110 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The NoteFanOut class feeds the notes of a MIDI file to a set of algorithms in
+ * parallel, one task per algorithm, so a single long file can use more than one
+ * core. Notes are found as by NoteReader, releases included.
+ *
+ * Notes are packed into int chunks. When a chunk is full the previous chunk's tasks
+ * are waited for before the new chunk is handed out, so every algorithm still sees
+ * the notes in order, and the reader fills the second buffer while the algorithms
+ * work on the first.
+ *
+ * @version 1.1
+ * @since 2026-10-18
+ */
+
+public class NoteFanOut extends NoteReader {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int RELEASE = 1 << 31;
+
+    private final PaletteAlgorithm[] algorithms;
+    private final ForkJoinPool pool;
+    private final ForkJoinTask<?>[] pending;
+    // key << 8 | velocity of each note-on; releases are flagged and followed by their duration
+    private int[] filling = new int[CHUNK_SIZE];
+    private int[] spare = new int[CHUNK_SIZE];
+    private int size;
+
+    /**
+     * Constructor for the NoteFanOut class.
+     * @param algorithms The algorithms to add every note to.
+     * @param pool The pool the per-algorithm tasks run on.
+     * @param merged Whether the file is read with SmfReader.readMerged() rather than
+     *               SmfReader.read().
+     */
+
+    public NoteFanOut(PaletteAlgorithm[] algorithms, ForkJoinPool pool, boolean merged) {
+        super(algorithms, merged);
+        this.algorithms = algorithms;
+        this.pool = pool;
+        this.pending = new ForkJoinTask<?>[algorithms.length];
+    }
+
+    @Override
+    protected void onNote(int key, int velocity) {
+        if (size == CHUNK_SIZE) {
+            dispatch();
+        }
+        filling[size++] = (key << 8) | velocity;
+    }
+
+    @Override
+    protected void onRelease(int key, int velocity, long micros) {
+        if (size + 2 > CHUNK_SIZE) {
+            dispatch();
+        }
+        filling[size++] = RELEASE | (key << 8) | velocity;
+        filling[size++] = (int) Math.min(Integer.MAX_VALUE, micros);
+    }
+
+    /**
+     * End the notes still sounding, hand out the last partial chunk and wait until
+     * every algorithm has all notes.
+     */
+
+    @Override
+    public void finish() {
+        super.finish();
+        if (size > 0) {
+            dispatch();
+        }
+        await();
+    }
+
+    private void dispatch() {
+        // the spare buffer is free again once the previous chunk is done
+        await();
+        int[] chunk = filling;
+        int length = size;
+        filling = spare;
+        spare = chunk;
+        size = 0;
+
+        for (int a = 0; a < algorithms.length; a++) {
+            PaletteAlgorithm algorithm = algorithms[a];
+            pending[a] = pool.submit(() -> addAll(algorithm, chunk, length));
+        }
+    }
+
+    private void await() {
+        for (int a = 0; a < pending.length; a++) {
+            if (pending[a] != null) {
+                pending[a].join();
+                pending[a] = null;
+            }
+        }
+    }
+
+    private static void addAll(PaletteAlgorithm algorithm, int[] chunk, int length) {
+        for (int i = 0; i < length; i++) {
+            int key = (chunk[i] >>> 8) & 0x7f;
+            if ((chunk[i] & RELEASE) != 0)
+                algorithm.release(key % 12, chunk[i] & 0xff, (key / 12) - 1, chunk[++i]);
+            else
+                algorithm.add(key % 12, chunk[i] & 0xff, (key / 12) - 1);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * The NoteReader class feeds the notes of a MIDI file to a set of algorithms: each
+ * note-on to add() as it is struck, and each note to release() when it stops
+ * sounding, with how long it sounded. Key and pedal state is followed by a
+ * NoteTracker and ticks are converted to time with the file's tempo map.
+ *
+ * Files may be read merged, in time order, or track by track. Keys and pedals are
+ * followed per channel, so merged tracks on different channels do not cut each
+ * other's notes short. Track by track, each track's notes end with the track and
+ * pedals only hold notes of their own track.
+ * When no algorithm is DURATION_WEIGHTED, nothing uses releases, so keys and pedals
+ * are not followed and onRelease() is never called.
+ * Subclasses can override onNote() and onRelease() to send the notes elsewhere. A
+ * reader keeps the tempo map of its file, so use a new one for every file.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class NoteReader implements SmfReader.Handler, NoteTracker.Listener {
+
+    private static final int NOTE_ON = 0x90;
+    private static final boolean RELEASES =
+            PaletteAlgorithms.any(PaletteAlgorithmProvider.Capability.DURATION_WEIGHTED);
+
+    private final PaletteAlgorithm[] algorithms;
+    private final boolean merged;
+    private final SmfReader.Clock clock = new SmfReader.Clock();
+    private final NoteTracker tracker = new NoteTracker(this);
+    private int track = -1;
+    private long lastTick;
+
+    /**
+     * Constructor for the NoteReader class.
+     * @param algorithms The algorithms to add every note to.
+     * @param merged Whether the file is read with SmfReader.readMerged() rather than
+     *               SmfReader.read().
+     */
+
+    public NoteReader(PaletteAlgorithm[] algorithms, boolean merged) {
+        this.algorithms = algorithms;
+        this.merged = merged;
+    }
+
+    @Override
+    public void onHeader(int division) {
+        clock.setDivision(division);
+    }
+
+    @Override
+    public void onTempo(int track, long tick, int microsPerQuarter) {
+        clock.addTempo(tick, microsPerQuarter);
+    }
+
+    @Override
+    public void onEvent(int track, long tick, int status, int data1, int data2) {
+        if (!RELEASES) {
+            if ((status & 0xf0) == NOTE_ON && data2 > 0)
+                onNote(data1, data2);
+            return;
+        }
+        if (!merged && track != this.track) {
+            // a new track starts from tick 0, so the last one's notes end here
+            tracker.finish(lastTick);
+            this.track = track;
+        }
+        lastTick = tick;
+
+        tracker.handle(status, data1, data2, tick);
+        if ((status & 0xf0) == NOTE_ON && data2 > 0) {
+            onNote(data1, data2);
+        }
+    }
+
+    @Override
+    public void onNoteEnd(int channel, int key, int velocity, long onset, long end) {
+        onRelease(key, velocity, clock.micros(end) - clock.micros(onset));
+    }
+
+    /**
+     * End the notes still sounding at the last event. Call once the file has been read.
+     */
+
+    public void finish() {
+        tracker.finish(lastTick);
+    }
+
+    /**
+     * @return The time of the event being read, in microseconds from the start of the
+     * file. Notes released at the end of a track or file end at its last event.
+     */
+
+    protected long micros() {
+        return clock.micros(lastTick);
+    }
+
+    /**
+     * A key was struck.
+     * @param key The MIDI key number, 0 to 127.
+     * @param velocity The velocity, 1 to 127.
+     */
+
+    protected void onNote(int key, int velocity) {
+        for (PaletteAlgorithm algorithm : algorithms) {
+            algorithm.add(key % 12, velocity, (key / 12) - 1);
+        }
+    }
+
+    /**
+     * A note stopped sounding.
+     * @param key The MIDI key number, 0 to 127.
+     * @param velocity The velocity the key was struck with.
+     * @param micros How long the note sounded, in microseconds.
+     */
+
+    protected void onRelease(int key, int velocity, long micros) {
+        for (PaletteAlgorithm algorithm : algorithms) {
+            algorithm.release(key % 12, velocity, (key / 12) - 1, micros);
+        }
+    }
+}
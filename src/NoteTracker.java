@@ -0,0 +1,323 @@
+/**
+ * The NoteTracker class follows which of the 128 MIDI keys are sounding on each of
+ * the 16 channels, the way a piano would: a key sounds from its note-on until it is
+ * released, or, while the channel's sustain pedal (CC 64) is down, until the pedal is
+ * lifted. The sostenuto pedal (CC 66) holds only the keys that were down when it was
+ * pressed.
+ *
+ * When a note stops sounding the listener is told when it started and ended, so
+ * callers can weight notes by how long they sounded. State is a few 128-bit sets per
+ * channel and a table of onsets, so each event costs the same however many keys are
+ * down; lifting a pedal only visits the notes it ends.
+ *
+ * Keys and pedals are kept apart per channel, so the same key struck on two channels
+ * is two notes, and a pedal only holds the notes of its own channel. The sounding
+ * keys and pitch classes reported are those of every channel together.
+ *
+ * Times are in whatever unit the caller passes, such as nanoseconds or ticks, and are
+ * reported back in the same unit. Not thread-safe.
+ *
+ * @version 1.1
+ * @since 2026-10-18
+ */
+
+public final class NoteTracker {
+
+    /**
+     * Told about every note that stops sounding.
+     */
+    public interface Listener {
+        /**
+         * @param channel The MIDI channel, 0 to 15.
+         * @param key The MIDI key number, 0 to 127.
+         * @param velocity The velocity the key was struck with.
+         * @param onset The time of the note-on.
+         * @param end The time the note stopped sounding.
+         */
+        void onNoteEnd(int channel, int key, int velocity, long onset, long end);
+    }
+
+    private static final int CHANNELS = 16;
+    private static final int NOTE_OFF = 0x80;
+    private static final int NOTE_ON = 0x90;
+    private static final int CONTROL_CHANGE = 0xB0;
+    private static final int SUSTAIN = 64;
+    private static final int SOSTENUTO = 66;
+    private static final int ALL_SOUND_OFF = 120;
+    private static final int ALL_NOTES_OFF = 123;
+
+    private final Listener listener;
+
+    // 128-bit key sets per channel, two words each at channel * 2: keys held down,
+    // keys sounding, and keys caught by sostenuto
+    private final long[] down = new long[CHANNELS * 2];
+    private final long[] sounding = new long[CHANNELS * 2];
+    private final long[] caught = new long[CHANNELS * 2];
+    // indexed by channel * 128 + key
+    private final long[] onsets = new long[CHANNELS * 128];
+    private final byte[] velocities = new byte[CHANNELS * 128];
+
+    // keys sounding on any channel, and on how many channels each one sounds
+    private final long[] anySounding = new long[2];
+    private final byte[] keyChannels = new byte[128];
+    // how many sounding notes fall on each pitch class
+    private final int[] pitchClassCounts = new int[12];
+    private int pitchClasses;
+    private int soundingCount;
+
+    // one bit per channel
+    private int sustain;
+    private int sostenuto;
+
+    /**
+     * Constructor for the NoteTracker class.
+     * @param listener Told about every note that stops sounding.
+     */
+
+    public NoteTracker(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Follow a short MIDI message. Messages other than notes and the pedal and
+     * all-notes-off controllers are ignored.
+     * @param status The status byte, command and channel.
+     * @param data1 The first data byte.
+     * @param data2 The second data byte.
+     * @param time The time of the message.
+     */
+
+    public void handle(int status, int data1, int data2, long time) {
+        int command = status & 0xF0;
+        int channel = status & 0x0F;
+        if (command == NOTE_ON && data2 > 0) {
+            noteOn(channel, data1, data2, time);
+        } else if (command == NOTE_ON || command == NOTE_OFF) {
+            // some keyboards send a note-on with velocity 0 instead of a note-off
+            noteOff(channel, data1, time);
+        } else if (command == CONTROL_CHANGE) {
+            controlChange(channel, data1, data2, time);
+        }
+    }
+
+    /**
+     * A key was struck. If it was still sounding on this channel, the old note ends here.
+     * @param channel The MIDI channel, 0 to 15.
+     * @param key The MIDI key number, 0 to 127.
+     * @param velocity The velocity, 1 to 127.
+     * @param time The time of the note-on.
+     */
+
+    public void noteOn(int channel, int key, int velocity, long time) {
+        int word = channel * 2 + (key >> 6);
+        long bit = 1L << (key & 63);
+        if ((sounding[word] & bit) != 0)
+            end(channel, key, time);
+
+        down[word] |= bit;
+        sounding[word] |= bit;
+        onsets[channel * 128 + key] = time;
+        velocities[channel * 128 + key] = (byte) velocity;
+        if (keyChannels[key]++ == 0)
+            anySounding[key >> 6] |= bit;
+        soundingCount++;
+        if (pitchClassCounts[key % 12]++ == 0)
+            pitchClasses |= 1 << (key % 12);
+    }
+
+    /**
+     * A key was released. It stops sounding unless a pedal of its channel holds it.
+     * @param channel The MIDI channel, 0 to 15.
+     * @param key The MIDI key number, 0 to 127.
+     * @param time The time of the note-off.
+     */
+
+    public void noteOff(int channel, int key, long time) {
+        int word = channel * 2 + (key >> 6);
+        long bit = 1L << (key & 63);
+        if ((down[word] & bit) == 0)
+            return;
+
+        down[word] &= ~bit;
+        if ((sustain & (1 << channel)) == 0 && (caught[word] & bit) == 0)
+            end(channel, key, time);
+    }
+
+    /**
+     * A controller changed. Pedals count as down from a value of 64.
+     * @param channel The MIDI channel, 0 to 15.
+     * @param controller The controller number.
+     * @param value The new value, 0 to 127.
+     * @param time The time of the change.
+     */
+
+    public void controlChange(int channel, int controller, int value, long time) {
+        int flag = 1 << channel;
+        boolean pressed = value >= 64;
+        if (controller == SUSTAIN) {
+            boolean lifted = (sustain & flag) != 0 && !pressed;
+            sustain = pressed ? sustain | flag : sustain & ~flag;
+            if (lifted)
+                endReleased(channel, time);
+        } else if (controller == SOSTENUTO) {
+            int word = channel * 2;
+            if (pressed && (sostenuto & flag) == 0) {
+                caught[word] = down[word];
+                caught[word + 1] = down[word + 1];
+            } else if (!pressed && (sostenuto & flag) != 0) {
+                caught[word] = 0;
+                caught[word + 1] = 0;
+                if ((sustain & flag) == 0)
+                    endReleased(channel, time);
+            }
+            sostenuto = pressed ? sostenuto | flag : sostenuto & ~flag;
+        } else if (controller == ALL_NOTES_OFF) {
+            // as if every key of the channel were released; pedals still hold them
+            for (int word = channel * 2; word < channel * 2 + 2; word++) {
+                while (down[word] != 0) {
+                    noteOff(channel, 64 * (word & 1) + Long.numberOfTrailingZeros(down[word]), time);
+                }
+            }
+        } else if (controller == ALL_SOUND_OFF) {
+            finish(channel, time);
+        }
+    }
+
+    /**
+     * End every sounding note, as at the end of a file, and release every key and pedal.
+     * @param time The time the notes end.
+     */
+
+    public void finish(long time) {
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            finish(channel, time);
+        }
+    }
+
+    /**
+     * Forget every key and pedal without telling the listener.
+     */
+
+    public void reset() {
+        for (int word = 0; word < CHANNELS * 2; word++) {
+            down[word] = 0;
+            sounding[word] = 0;
+            caught[word] = 0;
+        }
+        anySounding[0] = 0;
+        anySounding[1] = 0;
+        for (int key = 0; key < 128; key++) {
+            keyChannels[key] = 0;
+        }
+        for (int i = 0; i < 12; i++) {
+            pitchClassCounts[i] = 0;
+        }
+        pitchClasses = 0;
+        soundingCount = 0;
+        sustain = 0;
+        sostenuto = 0;
+    }
+
+    /**
+     * @param key The MIDI key number, 0 to 127.
+     * @return Whether the key is sounding on some channel, held down or by a pedal.
+     */
+
+    public boolean isSounding(int key) {
+        return (anySounding[key >> 6] & (1L << (key & 63))) != 0;
+    }
+
+    /**
+     * @param channel The MIDI channel, 0 to 15.
+     * @param key The MIDI key number, 0 to 127.
+     * @return Whether the key is held down on the channel.
+     */
+
+    public boolean isDown(int channel, int key) {
+        return (down[channel * 2 + (key >> 6)] & (1L << (key & 63))) != 0;
+    }
+
+    /**
+     * Find the next key sounding on any channel, to walk the sounding keys from low to high.
+     * @param from The lowest key to consider.
+     * @return The lowest sounding key from there up, or -1 if there is none.
+     */
+
+    public int nextSounding(int from) {
+        for (int word = from >> 6; word < 2; word++) {
+            long bits = anySounding[word];
+            if (word == from >> 6)
+                bits &= -1L << (from & 63);
+            if (bits != 0)
+                return 64 * word + Long.numberOfTrailingZeros(bits);
+        }
+        return -1;
+    }
+
+    /**
+     * @return The pitch classes of the sounding keys, bit 0 for C up to bit 11 for B.
+     */
+
+    public int getPitchClasses() {
+        return pitchClasses;
+    }
+
+    /**
+     * @return The number of sounding notes, counting a key once for every channel it sounds on.
+     */
+
+    public int getSoundingCount() {
+        return soundingCount;
+    }
+
+    /**
+     * @param channel The MIDI channel, 0 to 15.
+     * @return Whether the channel's sustain pedal is down.
+     */
+
+    public boolean isSustained(int channel) {
+        return (sustain & (1 << channel)) != 0;
+    }
+
+    /**
+     * End every sounding note of one channel and release its keys and pedals.
+     */
+
+    private void finish(int channel, long time) {
+        for (int word = channel * 2; word < channel * 2 + 2; word++) {
+            while (sounding[word] != 0) {
+                end(channel, 64 * (word & 1) + Long.numberOfTrailingZeros(sounding[word]), time);
+            }
+            down[word] = 0;
+            caught[word] = 0;
+        }
+        sustain &= ~(1 << channel);
+        sostenuto &= ~(1 << channel);
+    }
+
+    /**
+     * End the notes of a channel whose keys are up and no pedal holds.
+     */
+
+    private void endReleased(int channel, long time) {
+        for (int word = channel * 2; word < channel * 2 + 2; word++) {
+            long ending = sounding[word] & ~down[word] & ~caught[word];
+            while (ending != 0) {
+                int bit = Long.numberOfTrailingZeros(ending);
+                ending &= ending - 1;
+                end(channel, 64 * (word & 1) + bit, time);
+            }
+        }
+    }
+
+    private void end(int channel, int key, long time) {
+        sounding[channel * 2 + (key >> 6)] &= ~(1L << (key & 63));
+        if (--keyChannels[key] == 0)
+            anySounding[key >> 6] &= ~(1L << (key & 63));
+        soundingCount--;
+        if (--pitchClassCounts[key % 12] == 0)
+            pitchClasses &= ~(1 << (key % 12));
+        int slot = channel * 128 + key;
+        listener.onNoteEnd(channel, key, velocities[slot], onsets[slot], time);
+    }
+}
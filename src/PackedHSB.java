@@ -0,0 +1,129 @@
+/**
+ * The PackedHSB class stores a Hue-Saturation-Brightness color in one int and
+ * converts packed colors to RGB with fixed-point arithmetic, one color or a whole
+ * array at a time, without allocating Color objects.
+ *
+ * The layout is 12 bits of hue, 10 of saturation and 10 of brightness:
+ *
+ *     hhhhhhhh hhhhssss ssssssbb bbbbbbbb
+ *
+ * which is finer than the 8 bits per channel of the RGB result, so a converted
+ * color is within one step of Color.HSBtoRGB on each channel.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public final class PackedHSB {
+
+    private static final int HUE_STEPS = 4096;
+    private static final int MAX_SB = 1023;
+
+    // the p, q and t terms are exact integers over this denominator; multiplying by its
+    // reciprocal is much cheaper than three 64-bit divisions
+    private static final double INVERSE_SCALE = 1.0 / ((double) MAX_SB * MAX_SB * HUE_STEPS);
+
+    // brightness step to 8-bit value
+    private static final int[] VALUE = new int[MAX_SB + 1];
+
+    static {
+        for (int b = 0; b <= MAX_SB; b++) {
+            VALUE[b] = (b * 255 + MAX_SB / 2) / MAX_SB;
+        }
+    }
+
+    private PackedHSB() { }
+
+    /**
+     * Pack a color given as floats, like Color.HSBtoRGB takes them.
+     * @param hue The hue; only the fractional part is used.
+     * @param saturation The saturation, from 0.0f to 1.0f.
+     * @param brightness The brightness, from 0.0f to 1.0f.
+     * @return The packed color.
+     */
+
+    public static int pack(float hue, float saturation, float brightness) {
+        float h = hue - (float) Math.floor(hue);
+        int hueBits = Math.min((int) (h * HUE_STEPS), HUE_STEPS - 1);
+        return (hueBits << 20) | (quantize(saturation) << 10) | quantize(brightness);
+    }
+
+    /**
+     * @param hsb A packed color.
+     * @return The hue, from 0.0f to just under 1.0f.
+     */
+
+    public static float hue(int hsb) {
+        return (hsb >>> 20) / (float) HUE_STEPS;
+    }
+
+    /**
+     * @param hsb A packed color.
+     * @return The saturation, from 0.0f to 1.0f.
+     */
+
+    public static float saturation(int hsb) {
+        return ((hsb >>> 10) & MAX_SB) / (float) MAX_SB;
+    }
+
+    /**
+     * @param hsb A packed color.
+     * @return The brightness, from 0.0f to 1.0f.
+     */
+
+    public static float brightness(int hsb) {
+        return (hsb & MAX_SB) / (float) MAX_SB;
+    }
+
+    /**
+     * Convert one packed color to RGB.
+     * @param hsb A packed color.
+     * @return The color packed as 0xRRGGBB.
+     */
+
+    public static int toRGB(int hsb) {
+        int s = (hsb >>> 10) & MAX_SB;
+        int b = hsb & MAX_SB;
+        int v = VALUE[b];
+        if (s == 0)
+            return v * 0x010101;
+
+        // hue scaled to six sectors of 4096 steps each
+        int h6 = (hsb >>> 20) * 6;
+        int sector = h6 >>> 12;
+        long f = h6 & (HUE_STEPS - 1);
+
+        long vs = (long) b * 255;
+        int p = (int) (vs * (MAX_SB - s) * HUE_STEPS * INVERSE_SCALE + 0.5);
+        int q = (int) (vs * ((long) MAX_SB * HUE_STEPS - s * f) * INVERSE_SCALE + 0.5);
+        int t = (int) (vs * ((long) MAX_SB * HUE_STEPS - s * (HUE_STEPS - f)) * INVERSE_SCALE + 0.5);
+
+        switch (sector) {
+            case 0: return (v << 16) | (t << 8) | p;
+            case 1: return (q << 16) | (v << 8) | p;
+            case 2: return (p << 16) | (v << 8) | t;
+            case 3: return (p << 16) | (q << 8) | v;
+            case 4: return (t << 16) | (p << 8) | v;
+            default: return (v << 16) | (p << 8) | q;
+        }
+    }
+
+    /**
+     * Convert an array of packed colors to RGB.
+     * @param hsb The packed colors.
+     * @param hsbOffset The index of the first color to convert.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @param rgbOffset The index the first result is written to.
+     * @param length The number of colors.
+     */
+
+    public static void toRGB(int[] hsb, int hsbOffset, int[] rgb, int rgbOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            rgb[rgbOffset + i] = toRGB(hsb[hsbOffset + i]);
+        }
+    }
+
+    private static int quantize(float value) {
+        return Math.round(Math.max(0.0f, Math.min(1.0f, value)) * MAX_SB);
+    }
+}
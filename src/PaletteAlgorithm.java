@@ -19,9 +19,44 @@ interface PaletteAlgorithm {
      */
     void add(int note, int velocity, int octave);
 
+    /**
+     * The release method is called when a note stops sounding: its key was released
+     * and no pedal holds it any more. Algorithms that weight notes by how long they
+     * sound override this; the default ignores it.
+     * @param note The note, from 0 to 11, as given to add().
+     * @param velocity The velocity the note was struck with.
+     * @param octave The octave of the note, as given to add().
+     * @param micros How long the note sounded, in microseconds.
+     */
+    default void release(int note, int velocity, int octave, long micros) { }
+
+    /**
+     * The reset method returns the algorithm to the state it had when created, so
+     * one instance can be reused for the next session or file.
+     */
+    void reset();
+
     /**
      * The getColors method is used to retrieve the color palette the algorithm creates.
-     * @return Color[5] an array of 5 colors of the generated color palette.
+     * @return An array of the colors of the generated color palette, 5 unless the
+     *         algorithm was created with another size.
      */
     Color[] getColors();
+
+    /**
+     * The getColors method, filling a caller-supplied array instead of allocating
+     * Color objects. Algorithms should override this so that reading the palette
+     * during live play does not allocate.
+     * @param rgb The array to fill, with each color packed as 0xRRGGBB. It must hold
+     *            at least as many entries as the palette has colors.
+     * @return The number of colors written. The default writes no more than rgb holds.
+     */
+    default int getColors(int[] rgb) {
+        Color[] colors = getColors();
+        int count = Math.min(colors.length, rgb.length);
+        for (int i = 0; i < count; i++) {
+            rgb[i] = colors[i].getRGB() & 0xffffff;
+        }
+        return count;
+    }
 }
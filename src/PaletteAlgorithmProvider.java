@@ -0,0 +1,71 @@
+import java.util.Set;
+
+/**
+ * The PaletteAlgorithmProvider interface is the plugin point for new palette
+ * algorithms. Providers are found with java.util.ServiceLoader: a plugin jar lists
+ * its provider classes in META-INF/services/PaletteAlgorithmProvider, and each
+ * listed class needs a public no-argument constructor.
+ *
+ * Besides creating instances, a provider describes how its algorithm may be run,
+ * so callers can pick the cheapest way to feed it.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public interface PaletteAlgorithmProvider {
+
+    /**
+     * What an algorithm allows its callers to do.
+     */
+    enum Capability {
+        /** Each add() costs the same however many notes came before. */
+        INCREMENTAL,
+        /** The palette depends on the order notes are added in, not only on which notes. */
+        ORDER_SENSITIVE,
+        /** Two instances fed different notes can be combined into one fed all of them. */
+        MERGEABLE,
+        /**
+         * The palette is built from release(), so callers must say when notes stop
+         * sounding. Readers only follow keys and pedals, and log releases, when some
+         * algorithm has this.
+         */
+        DURATION_WEIGHTED
+    }
+
+    /**
+     * @return The display name of the algorithm, unique among providers.
+     */
+    String getName();
+
+    /**
+     * @return What the algorithm allows.
+     */
+    Set<Capability> getCapabilities();
+
+    /**
+     * @return The version of the algorithm, raised whenever the same notes would give
+     * different colors, so results saved by older versions are not reused.
+     */
+    default int getVersion() {
+        return 1;
+    }
+
+    /**
+     * Create a new instance. Instances are reused with reset(), so this is only
+     * called once per session or worker.
+     * @return A new PaletteAlgorithm that has not been given any notes.
+     */
+    PaletteAlgorithm create();
+
+    /**
+     * Create a new instance with a palette of the given size. Providers should
+     * override this; the default is for algorithms with a fixed number of colors,
+     * whose callers then use the count getColors() returns.
+     * @param colors The number of colors in the palette, at least 1.
+     * @return A new PaletteAlgorithm that has not been given any notes.
+     */
+    default PaletteAlgorithm create(int colors) {
+        return create();
+    }
+}
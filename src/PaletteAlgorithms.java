@@ -0,0 +1,368 @@
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * The PaletteAlgorithms class lists every available PaletteAlgorithm, in the order
+ * they appear in the algorithm drop-down.
+ *
+ * Algorithms are discovered once, through the PaletteAlgorithmProvider services
+ * listed in META-INF/services; the built-in algorithms are listed there first. If
+ * no algorithm can be loaded, PaletteAlgorithms fails to initialize rather than
+ * keeping a second list of the built-in ones.
+ *
+ * Palettes have 5 colors unless -Dpalette.colors=n asks for another size, up to 256.
+ *
+ * @version 1.2
+ * @since 2026-10-18
+ */
+
+public final class PaletteAlgorithms {
+
+    // half-life of the live NoteDistance, in notes; 0 turns decay off
+    public static final int DEFAULT_LIVE_HALF_LIFE = 1000;
+    private static final int LIVE_HALF_LIFE = Math.max(0,
+            Integer.getInteger("palette.halflife", DEFAULT_LIVE_HALF_LIFE));
+
+    public static final int DEFAULT_COLORS = 5;
+    public static final int MAX_COLORS = 256;
+    private static final int COLORS = Math.max(1, Math.min(MAX_COLORS,
+            Integer.getInteger("palette.colors", DEFAULT_COLORS)));
+
+    private static final PaletteAlgorithmProvider[] PROVIDERS = loadProviders();
+
+    private PaletteAlgorithms() { }
+
+    /**
+     * @return The half-life of the live NoteDistance in notes, set with
+     * -Dpalette.halflife=notes (default 1000); 0 means no decay.
+     */
+
+    public static int liveHalfLife() {
+        return LIVE_HALF_LIFE;
+    }
+
+    /**
+     * @return The number of available algorithms.
+     */
+
+    public static int count() {
+        return PROVIDERS.length;
+    }
+
+    /**
+     * @return The number of colors in each palette made by create() and createAll().
+     */
+
+    public static int colors() {
+        return COLORS;
+    }
+
+    /**
+     * @param index The index of the algorithm.
+     * @return The display name of the algorithm.
+     */
+
+    public static String name(int index) {
+        return PROVIDERS[index].getName();
+    }
+
+    /**
+     * @param name The display name of an algorithm.
+     * @return The index of the algorithm, or -1 if there is none of that name.
+     */
+
+    public static int indexOf(String name) {
+        for (int i = 0; i < PROVIDERS.length; i++) {
+            if (PROVIDERS[i].getName().equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param index The index of the algorithm.
+     * @return The provider of the algorithm, with its capabilities.
+     */
+
+    public static PaletteAlgorithmProvider provider(int index) {
+        return PROVIDERS[index];
+    }
+
+    /**
+     * @param capability A capability.
+     * @return true if at least one algorithm has the capability.
+     */
+
+    public static boolean any(PaletteAlgorithmProvider.Capability capability) {
+        for (PaletteAlgorithmProvider provider : PROVIDERS) {
+            if (provider.getCapabilities().contains(capability))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create a fresh instance of one algorithm.
+     * @param index The index of the algorithm.
+     * @return A new PaletteAlgorithm.
+     */
+
+    public static PaletteAlgorithm create(int index) {
+        return create(index, COLORS);
+    }
+
+    /**
+     * Create a fresh instance of one algorithm with a palette of a given size.
+     * @param index The index of the algorithm.
+     * @param colors The number of colors, from 1 to MAX_COLORS.
+     * @return A new PaletteAlgorithm.
+     */
+
+    public static PaletteAlgorithm create(int index, int colors) {
+        if (index < 0 || index >= PROVIDERS.length) {
+            throw new IllegalArgumentException("No algorithm at index " + index);
+        }
+        if (colors < 1 || colors > MAX_COLORS) {
+            throw new IllegalArgumentException("Palettes have 1 to " + MAX_COLORS + " colors, not " + colors);
+        }
+        return PROVIDERS[index].create(colors);
+    }
+
+    /**
+     * Create a fresh instance of every algorithm.
+     * @return An array of new PaletteAlgorithms, indexed like name().
+     */
+
+    public static PaletteAlgorithm[] createAll() {
+        PaletteAlgorithm[] algorithms = new PaletteAlgorithm[PROVIDERS.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            algorithms[i] = create(i);
+        }
+        return algorithms;
+    }
+
+    /**
+     * Reset every algorithm of an array made by createAll(), so it can be used again.
+     * @param algorithms The algorithms.
+     */
+
+    public static void resetAll(PaletteAlgorithm[] algorithms) {
+        for (PaletteAlgorithm algorithm : algorithms) {
+            algorithm.reset();
+        }
+    }
+
+    private static PaletteAlgorithmProvider[] loadProviders() {
+        List<PaletteAlgorithmProvider> providers = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Iterator<PaletteAlgorithmProvider> it = ServiceLoader.load(PaletteAlgorithmProvider.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext())
+                    break;
+                PaletteAlgorithmProvider provider = it.next();
+                if (names.contains(provider.getName())) {
+                    System.out.println("Ignoring duplicate palette algorithm " + provider.getName());
+                    continue;
+                }
+                providers.add(provider);
+                names.add(provider.getName());
+            } catch (ServiceConfigurationError e) {
+                // one broken plugin should not take the others down
+                System.out.println("Could not load palette algorithm: " + e.getMessage());
+            }
+        }
+
+        // the services file is the one list of algorithms, built-in ones included
+        if (providers.isEmpty()) {
+            throw new IllegalStateException("No palette algorithms found: META-INF/services/"
+                    + PaletteAlgorithmProvider.class.getName() + " is missing from the class path");
+        }
+        return providers.toArray(new PaletteAlgorithmProvider[0]);
+    }
+
+    /**
+     * Provides NoteDistance, which only depends on how often and how hard each note was played.
+     */
+
+    public static class NoteDistanceProvider implements PaletteAlgorithmProvider {
+
+        @Override
+        public String getName() {
+            return "NoteDistance";
+        }
+
+        @Override
+        public int getVersion() {
+            // 2: saturation and brightness from 0 to 1, no longer overflowing HSBtoRGB
+            return 2;
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.INCREMENTAL, Capability.MERGEABLE);
+        }
+
+        @Override
+        public PaletteAlgorithm create() {
+            return new MergeableNoteDistance(DEFAULT_COLORS, false);
+        }
+
+        @Override
+        public PaletteAlgorithm create(int colors) {
+            return new MergeableNoteDistance(colors, false);
+        }
+    }
+
+    /**
+     * Provides ColorDrift.
+     */
+
+    public static class ColorDriftProvider implements PaletteAlgorithmProvider {
+
+        @Override
+        public String getName() {
+            return "ColorDrift";
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.INCREMENTAL, Capability.ORDER_SENSITIVE);
+        }
+
+        @Override
+        public PaletteAlgorithm create() {
+            return new ColorDrift();
+        }
+
+        @Override
+        public PaletteAlgorithm create(int colors) {
+            return new ColorDrift(false, colors);
+        }
+    }
+
+    /**
+     * Provides Scriabin.
+     */
+
+    public static class ScriabinProvider implements PaletteAlgorithmProvider {
+
+        @Override
+        public String getName() {
+            return "Scriabin";
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.INCREMENTAL, Capability.ORDER_SENSITIVE);
+        }
+
+        @Override
+        public PaletteAlgorithm create() {
+            return new Scriabin();
+        }
+
+        @Override
+        public PaletteAlgorithm create(int colors) {
+            return new Scriabin(colors);
+        }
+    }
+
+    /**
+     * Provides NoteDistance with decay, for live play.
+     */
+
+    public static class LiveNoteDistanceProvider implements PaletteAlgorithmProvider {
+
+        @Override
+        public String getName() {
+            return "NoteDistance (Live)";
+        }
+
+        @Override
+        public int getVersion() {
+            // 2: saturation and brightness from 0 to 1, no longer overflowing HSBtoRGB
+            return 2;
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.INCREMENTAL, Capability.ORDER_SENSITIVE);
+        }
+
+        @Override
+        public PaletteAlgorithm create() {
+            return new NoteDistance(LIVE_HALF_LIFE);
+        }
+
+        @Override
+        public PaletteAlgorithm create(int colors) {
+            return new NoteDistance(LIVE_HALF_LIFE, colors);
+        }
+    }
+
+    /**
+     * Provides ColorDrift drifting in OKLab.
+     */
+
+    public static class PerceptualColorDriftProvider implements PaletteAlgorithmProvider {
+
+        @Override
+        public String getName() {
+            return "ColorDrift (Perceptual)";
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.INCREMENTAL, Capability.ORDER_SENSITIVE);
+        }
+
+        @Override
+        public PaletteAlgorithm create() {
+            return new ColorDrift(true);
+        }
+
+        @Override
+        public PaletteAlgorithm create(int colors) {
+            return new ColorDrift(true, colors);
+        }
+    }
+
+    /**
+     * Provides NoteDistance weighting each note by how long it sounded.
+     */
+
+    public static class DurationNoteDistanceProvider implements PaletteAlgorithmProvider {
+
+        @Override
+        public String getName() {
+            return "NoteDistance (Duration)";
+        }
+
+        @Override
+        public int getVersion() {
+            // 2: saturation and brightness from 0 to 1, no longer overflowing HSBtoRGB
+            return 2;
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.INCREMENTAL, Capability.MERGEABLE, Capability.DURATION_WEIGHTED);
+        }
+
+        @Override
+        public PaletteAlgorithm create() {
+            return new MergeableNoteDistance(DEFAULT_COLORS, true);
+        }
+
+        @Override
+        public PaletteAlgorithm create(int colors) {
+            return new MergeableNoteDistance(colors, true);
+        }
+    }
+}
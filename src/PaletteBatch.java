@@ -0,0 +1,344 @@
+import javax.sound.midi.InvalidMidiDataException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The PaletteBatch class is the headless entry point for tagging many MIDI files.
+ * It walks a directory tree, analyses every .mid file with every PaletteAlgorithm on
+ * a fork-join pool, and streams one result per file as JSON Lines, or one row per
+ * file and algorithm as CSV.
+ *
+ * Results are written as files finish, so the output order is not the walk order.
+ * Each file's notes are added in time order across its tracks. When there are fewer
+ * files than threads, the algorithms of each file also run in parallel.
+ *
+ * With --cache, files analysed by an earlier run are answered from a PaletteCache
+ * kept in the given directory, without being parsed.
+ *
+ * Usage: PaletteBatch &lt;directory&gt; [--format jsonl|csv] [--out file] [--threads n] [--cache dir]
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class PaletteBatch {
+
+    private enum Format { JSONL, CSV }
+
+    private static final String USAGE =
+            "Usage: PaletteBatch <directory> [--format jsonl|csv] [--out file] [--threads n] [--cache dir]";
+
+    private static final boolean ORDER_SENSITIVE =
+            PaletteAlgorithms.any(PaletteAlgorithmProvider.Capability.ORDER_SENSITIVE);
+
+    /**
+     * The algorithms and palettes one file is analysed into, reused between files.
+     */
+    private static final class Scratch {
+        final PaletteAlgorithm[] algorithms = PaletteAlgorithms.createAll();
+        // filled from the algorithms or the cache
+        final int[][] palettes = new int[PaletteAlgorithms.count()][PaletteAlgorithms.colors()];
+        final int[] counts = new int[PaletteAlgorithms.count()];
+    }
+
+    private final Format format;
+    private final Writer out;
+    // runs each file's algorithms in parallel, or null to run them on the file's thread
+    private final ForkJoinPool fanOut;
+    // earlier results, or null to analyse every file
+    private final PaletteCache cache;
+    // scratch sets not in use. A file takes one for as long as it is analysed, rather
+    // than one per thread: a thread waiting on the fan-out may run another file's
+    // process() in the meantime, which must not get the same algorithms
+    private final ConcurrentLinkedQueue<Scratch> idle = new ConcurrentLinkedQueue<>();
+
+    private PaletteBatch(Format format, Writer out, ForkJoinPool fanOut, PaletteCache cache) {
+        this.format = format;
+        this.out = out;
+        this.fanOut = fanOut;
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = null;
+        Format format = Format.JSONL;
+        String outFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String cacheDir = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--format") && i + 1 < args.length) {
+                    format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if (args[i].equals("--out") && i + 1 < args.length) {
+                    outFile = args[++i];
+                } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                    cacheDir = args[++i];
+                } else if (args[i].startsWith("--") || root != null) {
+                    throw new IllegalArgumentException(args[i]);
+                } else {
+                    root = Paths.get(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // an unknown option or format, a second directory, or a thread count that is not a number
+            root = null;
+        }
+
+        if (root == null || threads < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (!Files.isDirectory(root)) {
+            System.err.println("Not a directory: " + root);
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).filter(PaletteBatch::isMidiFile).collect(Collectors.toList());
+        }
+
+        PaletteCache cache = cacheDir == null ? null : PaletteCache.fromProperties(Paths.get(cacheDir));
+
+        OutputStream stream = outFile == null ? System.out : new FileOutputStream(outFile);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16)) {
+            PaletteBatch batch = new PaletteBatch(format, writer, files.size() < threads ? pool : null, cache);
+            batch.writeHeader();
+
+            pool.submit(() -> files.parallelStream().forEach(batch::process)).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        if (cache != null) {
+            System.err.println("Cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, "
+                    + cache.getEvictions() + " evicted");
+        }
+    }
+
+    static boolean isMidiFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".mid") || name.endsWith(".midi");
+    }
+
+    /**
+     * Analyse one file and write its result. Errors are reported per file and do not
+     * stop the batch.
+     * @param file The MIDI file.
+     */
+
+    private void process(Path file) {
+        Scratch scratch = idle.poll();
+        if (scratch == null)
+            scratch = new Scratch();
+
+        String line;
+        try {
+            int[][] palettes = scratch.palettes;
+            int[] counts = scratch.counts;
+            String key = cache == null ? null : cache.key(file);
+            if (key == null || !cache.get(key, palettes, counts)) {
+                PaletteAlgorithm[] algorithms = scratch.algorithms;
+                PaletteAlgorithms.resetAll(algorithms);
+                if (fanOut == null) {
+                    analyze(file.toFile(), algorithms);
+                } else {
+                    analyze(file.toFile(), algorithms, fanOut);
+                }
+                for (int a = 0; a < algorithms.length; a++) {
+                    counts[a] = algorithms[a].getColors(palettes[a]);
+                }
+                if (key != null) {
+                    store(key, palettes, counts);
+                }
+            }
+            line = format(file, palettes, counts);
+        } catch (InvalidMidiDataException | IOException | RuntimeException e) {
+            // truncated files can also fail inside the reader, e.g. with a BufferUnderflowException
+            line = formatError(file, e);
+        } finally {
+            idle.offer(scratch);
+        }
+
+        try {
+            synchronized (out) {
+                out.write(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Save a file's palettes. A cache that cannot be written only costs the next run
+     * a miss, so the file's result is kept either way.
+     */
+
+    private void store(String key, int[][] palettes, int[] counts) {
+        try {
+            cache.put(key, palettes, counts);
+        } catch (IOException ignored) { }
+    }
+
+    /**
+     * Run every algorithm over the note-on events of a MIDI file.
+     * @param file The MIDI file.
+     * @return The algorithms after the whole file was added, indexed like PaletteAlgorithms.
+     */
+
+    static PaletteAlgorithm[] analyze(File file) throws InvalidMidiDataException, IOException {
+        return analyze(file, PaletteAlgorithms.createAll());
+    }
+
+    /**
+     * Run a set of algorithms over the notes of a MIDI file.
+     * @param file The MIDI file.
+     * @param algorithms Fresh or reset algorithms, indexed like PaletteAlgorithms.
+     * @return The algorithms, after the whole file was added.
+     */
+
+    static PaletteAlgorithm[] analyze(File file, PaletteAlgorithm[] algorithms)
+            throws InvalidMidiDataException, IOException {
+        NoteReader reader = new NoteReader(algorithms, ORDER_SENSITIVE);
+        read(file, reader);
+        reader.finish();
+        return algorithms;
+    }
+
+    /**
+     * Run a set of algorithms over the notes of a MIDI file, with each
+     * algorithm on its own task.
+     * @param file The MIDI file.
+     * @param algorithms Fresh or reset algorithms, indexed like PaletteAlgorithms.
+     * @param pool The pool the algorithms run on.
+     * @return The algorithms, after the whole file was added.
+     */
+
+    static PaletteAlgorithm[] analyze(File file, PaletteAlgorithm[] algorithms, ForkJoinPool pool)
+            throws InvalidMidiDataException, IOException {
+        NoteFanOut fanOut = new NoteFanOut(algorithms, pool, ORDER_SENSITIVE);
+        try {
+            read(file, fanOut);
+        } finally {
+            // a file that fails halfway must not leave tasks running on the algorithms
+            fanOut.finish();
+        }
+        return algorithms;
+    }
+
+    /**
+     * Read a file in time order when an algorithm depends on note order, and track
+     * by track, which skips the merge, when none does.
+     */
+
+    private static void read(File file, SmfReader.Handler handler) throws InvalidMidiDataException, IOException {
+        if (ORDER_SENSITIVE) {
+            SmfReader.readMerged(file.toPath(), handler);
+        } else {
+            SmfReader.read(file.toPath(), handler);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == Format.CSV) {
+            StringBuilder header = new StringBuilder("file,algorithm");
+            for (int c = 0; c < PaletteAlgorithms.colors(); c++) {
+                header.append(",color").append(c);
+            }
+            out.write(header.append(",error\n").toString());
+        }
+    }
+
+    private String format(Path file, int[][] palettes, int[] counts) {
+        StringBuilder sb = new StringBuilder(128 * palettes.length);
+        char[] hex = new char[7];
+        if (format == Format.JSONL) {
+            sb.append("{\"file\":");
+            appendJsonString(sb, file.toString());
+            sb.append(",\"palettes\":{");
+            for (int a = 0; a < palettes.length; a++) {
+                if (a > 0)
+                    sb.append(',');
+                appendJsonString(sb, PaletteAlgorithms.name(a));
+                sb.append(":[");
+                for (int c = 0; c < counts[a]; c++) {
+                    if (c > 0)
+                        sb.append(',');
+                    ColorHex.format(palettes[a][c], hex, 0);
+                    sb.append('"').append(hex).append('"');
+                }
+                sb.append(']');
+            }
+            sb.append("}}\n");
+        } else {
+            for (int a = 0; a < palettes.length; a++) {
+                appendCsvField(sb, file.toString());
+                sb.append(',').append(PaletteAlgorithms.name(a));
+                for (int c = 0; c < counts[a]; c++) {
+                    ColorHex.format(palettes[a][c], hex, 0);
+                    sb.append(',').append(hex);
+                }
+                sb.append(",\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private String formatError(Path file, Exception e) {
+        String message = e.getClass().getSimpleName() + (e.getMessage() == null ? "" : ": " + e.getMessage());
+        StringBuilder sb = new StringBuilder();
+        if (format == Format.JSONL) {
+            sb.append("{\"file\":");
+            appendJsonString(sb, file.toString());
+            sb.append(",\"error\":");
+            appendJsonString(sb, message);
+            sb.append("}\n");
+        } else {
+            appendCsvField(sb, file.toString());
+            // empty algorithm and color columns
+            for (int c = 0; c <= PaletteAlgorithms.colors() + 1; c++) {
+                sb.append(',');
+            }
+            appendCsvField(sb, message);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendCsvField(StringBuilder sb, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,379 @@
+import java.awt.Color;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The PaletteBenchmark class is a stand-alone harness measuring the cost of every
+ * PaletteAlgorithm. Each algorithm replays the same note streams at several session
+ * lengths, and the harness reports the throughput and latency percentiles of add()
+ * and release() together, the throughput of both getColors() forms, and bytes
+ * allocated per call. It also compares HSB to RGB conversion through Color.HSBtoRGB
+ * with the PackedHSB kernel.
+ *
+ * Every algorithm listed in PaletteAlgorithms is measured. Streams are either
+ * synthetic (a seeded, skewed distribution of notes) or taken from the notes of
+ * .mid files given on the command line, looped to fill the session length. Streams
+ * hold both note-ons and releases, so algorithms weighted by duration are measured
+ * on the events they use. A session's length counts its notes; the releases played
+ * along with them are reported separately, and rates, latencies and allocation are
+ * per event of either kind.
+ *
+ * Usage: PaletteBenchmark [--lengths 1000,100000,10000000] [file.mid ...]
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class PaletteBenchmark {
+
+    private static final int[] DEFAULT_LENGTHS = {1_000, 100_000, 10_000_000};
+    private static final int WARMUP_LENGTH = 200_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int GET_COLORS_CALLS = 1_000_000;
+    private static final int LATENCY_SAMPLE_MASK = 15; // time one event in every 16
+    private static final int CONVERSION_COLORS = 1 << 20;
+    private static final int CONVERSION_ROUNDS = 10;
+    // flags a release in a packed stream; the next int is its duration in microseconds
+    private static final int RELEASE = 1 << 31;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    public static void main(String[] args) throws Exception {
+        int[] lengths = DEFAULT_LENGTHS;
+        ArrayList<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--lengths") && i + 1 < args.length) {
+                lengths = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        ArrayList<String> streamNames = new ArrayList<>();
+        ArrayList<int[]> streams = new ArrayList<>();
+        streamNames.add("synthetic");
+        streams.add(syntheticStream(42));
+        for (String file : files) {
+            int[] events = recordedStream(new File(file));
+            if (events.length == 0) {
+                System.out.println("Skipping " + file + ": no notes.");
+                continue;
+            }
+            streamNames.add(new File(file).getName());
+            streams.add(events);
+        }
+
+        System.out.printf("%-14s %-20s %10s %10s %14s %9s %9s %9s %12s %12s %12s %12s %12s%n",
+                "algorithm", "stream", "notes", "releases", "events/s", "p50 ns", "p99 ns", "p99.9 ns",
+                "event B/op", "colors/s", "colors B/op", "rgb/s", "rgb B/op");
+
+        for (int a = 0; a < PaletteAlgorithms.count(); a++) {
+            warmUp(a, streams.get(0));
+            for (int s = 0; s < streams.size(); s++) {
+                for (int length : lengths) {
+                    run(a, streamNames.get(s), streams.get(s), length);
+                }
+            }
+        }
+
+        convert();
+    }
+
+    /**
+     * Measure HSB to RGB conversion of a large array of colors, as done when exporting
+     * palettes, through Color.HSBtoRGB and through the PackedHSB kernel.
+     */
+
+    private static void convert() {
+        Random rand = new Random(7);
+        float[] hue = new float[CONVERSION_COLORS];
+        float[] saturation = new float[CONVERSION_COLORS];
+        float[] brightness = new float[CONVERSION_COLORS];
+        int[] packed = new int[CONVERSION_COLORS];
+        int[] rgb = new int[CONVERSION_COLORS];
+        for (int i = 0; i < CONVERSION_COLORS; i++) {
+            hue[i] = rand.nextFloat();
+            saturation[i] = rand.nextFloat();
+            brightness[i] = rand.nextFloat();
+            packed[i] = PackedHSB.pack(hue[i], saturation[i], brightness[i]);
+        }
+
+        long floatNanos = Long.MAX_VALUE;
+        long packedNanos = Long.MAX_VALUE;
+        int sink = 0;
+        for (int round = 0; round < CONVERSION_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CONVERSION_COLORS; i++) {
+                rgb[i] = Color.HSBtoRGB(hue[i], saturation[i], brightness[i]) & 0xffffff;
+            }
+            floatNanos = Math.min(floatNanos, System.nanoTime() - start);
+            sink += rgb[round];
+
+            start = System.nanoTime();
+            PackedHSB.toRGB(packed, 0, rgb, 0, CONVERSION_COLORS);
+            packedNanos = Math.min(packedNanos, System.nanoTime() - start);
+            sink += rgb[round];
+        }
+        if (sink == 0)
+            System.out.println("(black)");
+
+        System.out.printf("%nHSB to RGB, %d colors: Color.HSBtoRGB %.0f colors/s, PackedHSB %.0f colors/s%n",
+                CONVERSION_COLORS, CONVERSION_COLORS * 1e9 / floatNanos, CONVERSION_COLORS * 1e9 / packedNanos);
+
+        // perceptual spaces, both ways, one channel array each
+        float[] lightness = new float[CONVERSION_COLORS];
+        float[] a = new float[CONVERSION_COLORS];
+        float[] b = new float[CONVERSION_COLORS];
+        int[] back = new int[CONVERSION_COLORS];
+        long toOklabNanos = Long.MAX_VALUE;
+        long fromOklabNanos = Long.MAX_VALUE;
+        long toLabNanos = Long.MAX_VALUE;
+        long fromLabNanos = Long.MAX_VALUE;
+        for (int round = 0; round < CONVERSION_ROUNDS; round++) {
+            long start = System.nanoTime();
+            PerceptualColor.rgbToOklab(rgb, 0, lightness, a, b, 0, CONVERSION_COLORS);
+            toOklabNanos = Math.min(toOklabNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            PerceptualColor.oklabToRgb(lightness, a, b, 0, back, 0, CONVERSION_COLORS);
+            fromOklabNanos = Math.min(fromOklabNanos, System.nanoTime() - start);
+            sink += back[round];
+
+            start = System.nanoTime();
+            PerceptualColor.rgbToLab(rgb, 0, lightness, a, b, 0, CONVERSION_COLORS);
+            toLabNanos = Math.min(toLabNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            PerceptualColor.labToRgb(lightness, a, b, 0, back, 0, CONVERSION_COLORS);
+            fromLabNanos = Math.min(fromLabNanos, System.nanoTime() - start);
+            sink += back[round];
+        }
+        if (sink == 0)
+            System.out.println("(black)");
+
+        System.out.printf("RGB to OKLab %.0f colors/s, back %.0f colors/s; RGB to CIELAB %.0f colors/s, back %.0f colors/s%n",
+                CONVERSION_COLORS * 1e9 / toOklabNanos, CONVERSION_COLORS * 1e9 / fromOklabNanos,
+                CONVERSION_COLORS * 1e9 / toLabNanos, CONVERSION_COLORS * 1e9 / fromLabNanos);
+    }
+
+    /**
+     * Run one session of an algorithm and print its measurements.
+     * @param alg The index of the algorithm.
+     * @param streamName The name of the replayed stream.
+     * @param stream Packed note events, see pack().
+     * @param length The number of notes in the session.
+     */
+
+    private static void run(int alg, String streamName, int[] stream, int length) {
+        // without a counter every reading is -1, so differences would read as 0 bytes
+        boolean counted = THREADS != null;
+        PaletteAlgorithm algorithm = PaletteAlgorithms.create(alg);
+        // a stream holds at most one release per note
+        long[] samples = new long[(2 * length + LATENCY_SAMPLE_MASK) / (LATENCY_SAMPLE_MASK + 1)];
+        int sampleCount = 0;
+        int events = 0;
+        int releases = 0;
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int notes = 0, e = 0; notes < length; events++) {
+            if (e == stream.length)
+                e = 0;
+            if ((stream[e] & RELEASE) != 0)
+                releases++;
+            else
+                notes++;
+            if ((events & LATENCY_SAMPLE_MASK) == 0) {
+                long t0 = System.nanoTime();
+                e = play(algorithm, stream, e);
+                samples[sampleCount++] = System.nanoTime() - t0;
+            } else {
+                e = play(algorithm, stream, e);
+            }
+        }
+        long addNanos = System.nanoTime() - start;
+        long addBytes = allocatedBytes() - allocated;
+
+        int colorCalls = Math.min(GET_COLORS_CALLS, Math.max(length, 10_000));
+        int sink = 0;
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < colorCalls; i++) {
+            sink += algorithm.getColors().length;
+        }
+        long colorNanos = System.nanoTime() - start;
+        long colorBytes = allocatedBytes() - allocated;
+
+        int[] rgb = new int[PaletteAlgorithms.colors()];
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < colorCalls; i++) {
+            sink += algorithm.getColors(rgb);
+        }
+        long rgbNanos = System.nanoTime() - start;
+        long rgbBytes = allocatedBytes() - allocated;
+        if (sink == 0)
+            System.out.println("(empty palette)");
+
+        Arrays.sort(samples, 0, sampleCount);
+        System.out.printf("%-14s %-20s %10d %10d %14.0f %9d %9d %9d %12s %12.0f %12s %12.0f %12s%n",
+                PaletteAlgorithms.name(alg), streamName, length, releases,
+                events * 1e9 / addNanos,
+                percentile(samples, sampleCount, 0.50),
+                percentile(samples, sampleCount, 0.99),
+                percentile(samples, sampleCount, 0.999),
+                perOp(counted, addBytes, events),
+                colorCalls * 1e9 / colorNanos,
+                perOp(counted, colorBytes, colorCalls),
+                colorCalls * 1e9 / rgbNanos,
+                perOp(counted, rgbBytes, colorCalls));
+    }
+
+    /**
+     * Run the algorithm a few times without printing, so the JIT has compiled the
+     * add() and getColors() paths before measuring.
+     */
+
+    private static void warmUp(int alg, int[] stream) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            PaletteAlgorithm algorithm = PaletteAlgorithms.create(alg);
+            int[] rgb = new int[PaletteAlgorithms.colors()];
+            for (int i = 0, e = 0; i < WARMUP_LENGTH; i++) {
+                if (e == stream.length)
+                    e = 0;
+                e = play(algorithm, stream, e);
+                if ((i & 0xff) == 0) {
+                    algorithm.getColors();
+                    algorithm.getColors(rgb);
+                }
+            }
+        }
+    }
+
+    /**
+     * Give an algorithm one event of a stream.
+     * @param algorithm The algorithm.
+     * @param stream Packed note events, see pack().
+     * @param e The position of the event.
+     * @return The position of the next event.
+     */
+
+    private static int play(PaletteAlgorithm algorithm, int[] stream, int e) {
+        int event = stream[e];
+        if ((event & RELEASE) != 0) {
+            algorithm.release(noteOf(event), velocityOf(event), octaveOf(event), stream[e + 1]);
+            return e + 2;
+        }
+        algorithm.add(noteOf(event), velocityOf(event), octaveOf(event));
+        return e + 1;
+    }
+
+    /**
+     * Pack a note event into an int: note in bits 16-23, octave + 1 in 8-15, velocity in 0-7.
+     * A release also sets RELEASE and is followed by its duration.
+     */
+
+    private static int pack(int note, int velocity, int octave) {
+        return (note << 16) | ((octave + 1) << 8) | velocity;
+    }
+
+    private static int noteOf(int event) {
+        return (event >>> 16) & 0xff;
+    }
+
+    private static int velocityOf(int event) {
+        return event & 0xff;
+    }
+
+    private static int octaveOf(int event) {
+        return ((event >>> 8) & 0xff) - 1;
+    }
+
+    /**
+     * Generate a synthetic stream with a skewed note distribution, similar to tonal
+     * music where a handful of notes dominate. Each note is released right after it is
+     * struck, having sounded for a random time around half a second.
+     * @param seed The random seed, so runs are reproducible.
+     * @return Packed note events.
+     */
+
+    private static int[] syntheticStream(long seed) {
+        Random rand = new Random(seed);
+        int[] events = new int[3 << 16];
+        int[] scale = {0, 2, 4, 5, 7, 9, 11};
+        for (int i = 0; i < events.length; i += 3) {
+            int note = rand.nextInt(4) == 0 ? rand.nextInt(12) : scale[(int)Math.abs(rand.nextGaussian() * 2) % scale.length];
+            int octave = 2 + rand.nextInt(5);
+            int velocity = 1 + Math.min(126, Math.max(0, (int)(64 + rand.nextGaussian() * 24)));
+            events[i] = pack(note, velocity, octave);
+            events[i + 1] = RELEASE | events[i];
+            events[i + 2] = (int) (-500_000 * Math.log(1 - rand.nextDouble()));
+        }
+        return events;
+    }
+
+    /**
+     * Read the notes and releases of a MIDI file, in time order like the upload path.
+     * @param file The .mid file.
+     * @return Packed note events.
+     */
+
+    private static int[] recordedStream(File file) throws Exception {
+        int[][] events = {new int[1024]};
+        int[] count = {0};
+        NoteReader reader = new NoteReader(new PaletteAlgorithm[0], true) {
+            @Override
+            protected void onNote(int key, int velocity) {
+                append(pack(key % 12, velocity, (key / 12) - 1));
+            }
+
+            @Override
+            protected void onRelease(int key, int velocity, long micros) {
+                append(RELEASE | pack(key % 12, velocity, (key / 12) - 1));
+                append((int) Math.min(Integer.MAX_VALUE, micros));
+            }
+
+            private void append(int event) {
+                if (count[0] == events[0].length)
+                    events[0] = Arrays.copyOf(events[0], count[0] * 2);
+                events[0][count[0]++] = event;
+            }
+        };
+        SmfReader.readMerged(file.toPath(), reader);
+        reader.finish();
+        return Arrays.copyOf(events[0], count[0]);
+    }
+
+    private static long percentile(long[] sorted, int count, double p) {
+        if (count == 0)
+            return 0;
+        return sorted[Math.min(count - 1, (int)(p * count))];
+    }
+
+    private static String perOp(boolean counted, long bytes, long ops) {
+        if (!counted)
+            return "n/a";
+        return String.format("%.1f", (double)bytes / ops);
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS == null)
+            return -1;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (ClassCastException | UnsupportedOperationException ignored) { }
+        return null;
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The PaletteCache class keeps the palettes of analysed MIDI files on disk, so a
+ * file seen before is answered without parsing it or running any algorithm.
+ *
+ * Entries are content-addressed: the key is a SHA-256 of the file's bytes followed
+ * by the palette size, the live half-life and the name and version of every
+ * algorithm, so a renamed or copied file still hits, while an edited file, a new
+ * plugin or a new algorithm version misses. Each entry is one small file holding
+ * every algorithm's palette. When the entries grow past the size limit the least
+ * recently used are deleted; an entry's modified time records its last use, so the
+ * order survives restarts.
+ *
+ * Safe to share between threads; entries are written to a temporary file and moved
+ * into place, so readers never see half an entry.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public final class PaletteCache {
+
+    private static final int MAGIC = 0x50434143; // "PCAC"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".pal";
+    private static final long DEFAULT_MAX_BYTES = 64L << 20;
+    // file bytes hashed per mapping, so large files need not be mapped whole
+    private static final long HASH_CHUNK = 1L << 26;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Path directory;
+    private final long maxBytes;
+    // the palette size, the live half-life, and the name and version of every algorithm,
+    // hashed into each key
+    private final byte[] algorithmIdentity;
+
+    // entry key to entry size, least recently used first; guarded by this
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor for the PaletteCache class. Creates the directory if needed and
+     * indexes the entries already in it.
+     * @param directory The directory the entries are kept in.
+     * @param maxBytes The total size of entries above which old entries are deleted.
+     */
+
+    public PaletteCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.algorithmIdentity = algorithmIdentity();
+        Files.createDirectories(directory);
+
+        ArrayList<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    found.add(path);
+                } else if (name.endsWith(".tmp")) {
+                    // left behind by a writer that did not finish
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+
+        // oldest use first, so the map starts in LRU order
+        long[] used = new long[found.size()];
+        Integer[] order = new Integer[found.size()];
+        for (int i = 0; i < order.length; i++) {
+            used[i] = Files.getLastModifiedTime(found.get(i)).toMillis();
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Long.compare(used[x], used[y]));
+        synchronized (this) {
+            for (int i : order) {
+                Path path = found.get(i);
+                String name = path.getFileName().toString();
+                long size = Files.size(path);
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                totalBytes += size;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Open the cache set by -Dpalette.cache.dir=directory (default ~/.palette/cache)
+     * and -Dpalette.cache.size=megabytes (default 64).
+     * @return The cache, or null if palette.cache.dir is set to an empty string.
+     */
+
+    public static PaletteCache fromProperties() throws IOException {
+        String dir = System.getProperty("palette.cache.dir",
+                Paths.get(System.getProperty("user.home"), ".palette", "cache").toString());
+        if (dir.isEmpty())
+            return null;
+        return fromProperties(Paths.get(dir));
+    }
+
+    /**
+     * Open a cache in the given directory, limited by -Dpalette.cache.size=megabytes
+     * (default 64).
+     * @param directory Where the entries are kept; created if missing.
+     * @return The cache.
+     */
+
+    public static PaletteCache fromProperties(Path directory) throws IOException {
+        long megabytes = Long.getLong("palette.cache.size", DEFAULT_MAX_BYTES >> 20);
+        return new PaletteCache(directory, megabytes << 20);
+    }
+
+    /**
+     * Compute the key of a file's entry from its contents and the available algorithms.
+     * @param file The MIDI file.
+     * @return The key, 64 hex digits.
+     */
+
+    public String key(Path file) throws IOException {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_CHUNK) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_CHUNK, size - position)));
+            }
+        }
+        digest.update(algorithmIdentity);
+
+        byte[] hash = digest.digest();
+        char[] hex = new char[2 * hash.length];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = Character.forDigit((hash[i] >>> 4) & 0xf, 16);
+            hex[2 * i + 1] = Character.forDigit(hash[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Look up the palettes of a file. An entry that cannot be read is deleted and
+     * counts as a miss.
+     * @param key The key from key().
+     * @param palettes Filled with each algorithm's colors packed as 0xRRGGBB, indexed
+     *                 like PaletteAlgorithms.
+     * @param counts Filled with the number of colors in each palette.
+     * @return Whether the entry was found.
+     */
+
+    public boolean get(String key, int[][] palettes, int[] counts) {
+        synchronized (this) {
+            // get() also marks the entry as the most recently used
+            if (entries.get(key) == null) {
+                misses++;
+                return false;
+            }
+        }
+
+        Path path = entryPath(key);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != palettes.length)
+                throw new IOException("Bad cache entry " + path);
+            for (int a = 0; a < palettes.length; a++) {
+                int count = buffer.getInt();
+                if (count < 0 || count > palettes[a].length)
+                    throw new IOException("Bad cache entry " + path);
+                buffer.asIntBuffer().get(palettes[a], 0, count);
+                buffer.position(buffer.position() + 4 * count);
+                counts[a] = count;
+            }
+        } catch (IOException | RuntimeException e) {
+            // missing, evicted by another thread, or damaged
+            remove(key);
+            synchronized (this) {
+                misses++;
+            }
+            return false;
+        }
+
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // the order is still right until the next start
+        }
+        synchronized (this) {
+            hits++;
+        }
+        return true;
+    }
+
+    /**
+     * Save the palettes of a file, deleting the least recently used entries if the
+     * cache grows past its size limit.
+     * @param key The key from key().
+     * @param palettes Each algorithm's colors packed as 0xRRGGBB, indexed like PaletteAlgorithms.
+     * @param counts The number of colors in each palette.
+     */
+
+    public void put(String key, int[][] palettes, int[] counts) throws IOException {
+        int size = 12;
+        for (int a = 0; a < palettes.length; a++) {
+            size += 4 + 4 * counts[a];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(palettes.length);
+        for (int a = 0; a < palettes.length; a++) {
+            buffer.putInt(counts[a]);
+            buffer.asIntBuffer().put(palettes[a], 0, counts[a]);
+            buffer.position(buffer.position() + 4 * counts[a]);
+        }
+
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, buffer.array());
+            Files.move(temp, entryPath(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        synchronized (this) {
+            Long old = entries.put(key, (long) size);
+            totalBytes += size - (old == null ? 0 : old);
+            evict();
+        }
+    }
+
+    /**
+     * @return The number of lookups answered from the cache.
+     */
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that found no usable entry.
+     */
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of entries deleted to stay under the size limit.
+     */
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The total size of the entries in bytes.
+     */
+
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Long size = entries.remove(key);
+            if (size != null)
+                totalBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(entryPath(key));
+        } catch (IOException ignored) { }
+    }
+
+    /**
+     * Delete least recently used entries until the cache fits. The caller must hold this.
+     */
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            evictions++;
+            try {
+                Files.deleteIfExists(entryPath(entry.getKey()));
+            } catch (IOException ignored) {
+                // it will be found again, and evicted again, at the next start
+            }
+        }
+    }
+
+    private static byte[] algorithmIdentity() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream identity = new DataOutputStream(bytes)) {
+            identity.writeInt(PaletteAlgorithms.colors());
+            identity.writeInt(PaletteAlgorithms.liveHalfLife());
+            for (int a = 0; a < PaletteAlgorithms.count(); a++) {
+                // a zero byte ends each name, so names cannot run into each other
+                identity.write(PaletteAlgorithms.name(a).getBytes(StandardCharsets.UTF_8));
+                identity.writeByte(0);
+                identity.writeInt(PaletteAlgorithms.provider(a).getVersion());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,163 @@
+import javax.sound.midi.InvalidMidiDataException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The PaletteCorpus class computes one palette for a whole group of MIDI files,
+ * such as every piece by one composer or every file of a playlist, using the
+ * mergeable algorithms.
+ *
+ * Each group is a parallel reduction: every file is read into a set of algorithms
+ * of its own worker, and the workers' sets are combined at the end, so the result
+ * is the same as feeding every file to one set, at any number of cores.
+ *
+ * Usage: PaletteCorpus &lt;directory or playlist&gt;...
+ *
+ * A directory groups every .mid file below it. A playlist (.m3u, .m3u8 or .txt)
+ * lists one file per line, relative to the playlist; lines starting with # are
+ * skipped.
+ *
+ * @version 1.1
+ * @since 2026-10-18
+ */
+
+public class PaletteCorpus {
+
+    // indices, as in PaletteAlgorithms, of the algorithms that can be combined
+    private final int[] mergeable;
+
+    private PaletteCorpus() {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < PaletteAlgorithms.count(); i++) {
+            if (PaletteAlgorithms.provider(i).getCapabilities().contains(PaletteAlgorithmProvider.Capability.MERGEABLE))
+                indices.add(i);
+        }
+        mergeable = indices.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PaletteCorpus <directory or playlist>...");
+            System.exit(2);
+        }
+
+        PaletteCorpus corpus = new PaletteCorpus();
+        int[] rgb = new int[PaletteAlgorithms.colors()];
+        for (String arg : args) {
+            Path group = Paths.get(arg);
+            List<Path> files = listFiles(group);
+            AtomicInteger failed = new AtomicInteger();
+
+            long start = System.nanoTime();
+            MergeablePaletteAlgorithm[] algorithms = corpus.reduce(files, failed);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println(group + ": " + (files.size() - failed.get()) + " files in " + millis + " ms"
+                    + (failed.get() > 0 ? ", " + failed.get() + " unreadable" : ""));
+            for (int a = 0; a < algorithms.length; a++) {
+                StringBuilder sb = new StringBuilder("  ").append(PaletteAlgorithms.name(corpus.mergeable[a])).append(':');
+                int count = algorithms[a].getColors(rgb);
+                for (int i = 0; i < count; i++) {
+                    sb.append(' ').append(ColorHex.format(rgb[i]));
+                }
+                System.out.println(sb);
+            }
+        }
+    }
+
+    /**
+     * Reduce a group of files to one set of algorithms, in parallel.
+     * @param files The MIDI files.
+     * @param failed Counts the files that could not be read; they are skipped.
+     * @return The combined mergeable algorithms, in PaletteAlgorithms order.
+     */
+
+    MergeablePaletteAlgorithm[] reduce(List<Path> files, AtomicInteger failed) {
+        return files.parallelStream().collect(Partial::new,
+                (partial, file) -> partial.add(file, failed),
+                Partial::combine).total;
+    }
+
+    /**
+     * The result of one worker: the combined algorithms of the files it read, and a
+     * scratch set each file is read into first, so a file that fails halfway adds nothing.
+     */
+
+    private class Partial {
+
+        private final MergeablePaletteAlgorithm[] total = createMergeable();
+        private final MergeablePaletteAlgorithm[] scratch = createMergeable();
+
+        void add(Path file, AtomicInteger failed) {
+            PaletteAlgorithms.resetAll(scratch);
+            try {
+                // the algorithms do not depend on note order, so tracks need not be merged
+                NoteReader reader = new NoteReader(scratch, false);
+                SmfReader.read(file, reader);
+                reader.finish();
+            } catch (InvalidMidiDataException | IOException | RuntimeException e) {
+                // a malformed file can also fail inside the reader; skip it rather than the group
+                System.err.println(file + ": " + e.getClass().getSimpleName()
+                        + (e.getMessage() == null ? "" : ": " + e.getMessage()));
+                failed.incrementAndGet();
+                return;
+            }
+            for (int i = 0; i < total.length; i++) {
+                total[i].combine(scratch[i]);
+            }
+        }
+
+        void combine(Partial other) {
+            for (int i = 0; i < total.length; i++) {
+                total[i].combine(other.total[i]);
+            }
+        }
+    }
+
+    private MergeablePaletteAlgorithm[] createMergeable() {
+        MergeablePaletteAlgorithm[] algorithms = new MergeablePaletteAlgorithm[mergeable.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            PaletteAlgorithm algorithm = PaletteAlgorithms.create(mergeable[i]);
+            if (!(algorithm instanceof MergeablePaletteAlgorithm)) {
+                PaletteAlgorithmProvider provider = PaletteAlgorithms.provider(mergeable[i]);
+                throw new IllegalStateException(provider.getClass().getName() + " declares " + provider.getName()
+                        + " MERGEABLE, but creates a " + algorithm.getClass().getName()
+                        + ", which is not a MergeablePaletteAlgorithm");
+            }
+            algorithms[i] = (MergeablePaletteAlgorithm) algorithm;
+        }
+        return algorithms;
+    }
+
+    /**
+     * List the MIDI files of a group.
+     * @param group A directory, or a playlist file.
+     * @return The MIDI files.
+     */
+
+    static List<Path> listFiles(Path group) throws IOException {
+        if (Files.isDirectory(group)) {
+            try (Stream<Path> walk = Files.walk(group)) {
+                return walk.filter(Files::isRegularFile).filter(PaletteBatch::isMidiFile).collect(Collectors.toList());
+            }
+        }
+
+        Path base = group.toAbsolutePath().getParent();
+        List<Path> files = new ArrayList<>();
+        for (String line : Files.readAllLines(group, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            files.add(base.resolve(line));
+        }
+        return files;
+    }
+}
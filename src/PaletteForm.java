@@ -5,8 +5,13 @@ import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import java.util.*; //this includes Scanner
+import java.util.concurrent.locks.LockSupport;
 
 import javax.sound.midi.MidiDevice.Info;
 
@@ -25,40 +30,167 @@ public class PaletteForm {
     private JButton stopButton;
     private JLabel colorPaletteLabel;
     private JButton uploadButton;
-    private JPanel color0;
-    private JPanel color1;
-    private JPanel color2;
-    private JPanel color3;
-    private JPanel color4;
-    private JLabel color0Label;
-    private JLabel color1Label;
-    private JLabel color2Label;
-    private JLabel color3Label;
-    private JLabel color4Label;
+    private PaletteSwatches swatches;
     private JLabel chordLabel;
-    private JComboBox algComboBox;
+    private JComboBox<String> algComboBox;
 
-    private MidiDevice input;
+    private ArrayList<MidiDevice> inputs = new ArrayList<>();
 
     private Sequencer sequencer;
-    private Transmitter transmitter;
     private Receiver receiver;
-    private MyMidiDevice myDevice;
-    private ArrayList<String> chord;
-    private ArrayList<String> chord2;
 
-    private PaletteAlgorithm algorithm[];
+    private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+
+    // keys sounding, held down or by a pedal, timed in nanoseconds; guarded by stateLock.
+    // each note is released into the algorithms when it stops sounding
+    private final NoteTracker notes = new NoteTracker(this::noteEnded);
+
+    // only the selected algorithm is updated per note; the others catch up when selected
+    private LazyPaletteSet algorithms;
     private int selectedAlgorithm = 0;
-    private static int ALG_COUNT = 3;
+    private static int ALG_COUNT = PaletteAlgorithms.count();
+
+    // palettes of files uploaded before, or null when there is none
+    private PaletteCache cache;
+    // every algorithm's palette of an upload answered by the cache, shown instead of
+    // the algorithms while the file is still being read; guarded by stateLock
+    private int[][] cachedPalettes;
+    private int[] cachedCounts;
+    // raised by every upload and reset, so a file read in the background is only
+    // shown if nothing has replaced it since; guarded by stateLock
+    private int uploads;
+
+    // MIDI events are handed from each device's driver thread to a worker through a
+    // ring per device; the worker merges them in the order they were received and
+    // holds stateLock while it updates the chord and the algorithms
+    private static final int RING_CAPACITY = 4096;
+    private static final int DRAIN_BATCH = 256;
+    // log entries replayed into the hidden algorithms per turn while no events wait
+    private static final int IDLE_CATCH_UP = 256;
+    private final Object stateLock = new Object();
+    // rings drained by the worker: one per open device, then the network's if enabled
+    private volatile MidiEventRing[] rings = new MidiEventRing[0];
+    private MidiEventRing networkEvents;
+    private NetworkMidiInput network;
+    private Thread worker;
+    private volatile boolean visualsDirty;
+
+    // latency of each stage of the live path, published over JMX
+    private PaletteMetrics metrics;
+
+    // binary journal of the notes of the session being recorded, guarded by stateLock
+    private PaletteJournal.Writer journal;
+    private Path journalFile;
+
+    // the packed colors of the selected palette, read under stateLock and then shown
+    private int[] paletteRGB;
 
     /**
-     * Initialize all available color algorithms.
+     * Initialize all available color algorithms, or reset them if they already exist.
      */
     private void initializeAlgorithms() {
-        algorithm = new PaletteAlgorithm[ALG_COUNT];
-        algorithm[0] = new NoteDistance();
-        algorithm[1] = new ColorDrift();
-        algorithm[2] = new Scriabin();
+        synchronized (stateLock) {
+            if (algorithms == null) {
+                algorithms = new LazyPaletteSet(PaletteAlgorithms.createAll(), selectedAlgorithm);
+                algorithms.setMetrics(metrics);
+            } else {
+                algorithms.reset();
+            }
+            notes.reset();
+            cachedPalettes = null;
+            cachedCounts = null;
+            uploads++;
+        }
+    }
+
+    /**
+     * Read an uploaded file into a fresh set of algorithms, off the event dispatch
+     * thread, and show it once read. The live worker keeps using the current
+     * algorithms meanwhile, so it never waits for the file.
+     *
+     * A file uploaded before is shown from the cache at once, but is still read, so
+     * notes played afterwards add to its palette whether or not the cache had it.
+     * @param file The MIDI file.
+     * @param upload The upload number, from uploads.
+     */
+
+    private void loadFile(File file, int upload) {
+        try {
+            String key = cache == null ? null : cache.key(file.toPath());
+            int[][] palettes = new int[ALG_COUNT][PaletteAlgorithms.colors()];
+            int[] counts = new int[ALG_COUNT];
+            boolean cached = key != null && cache.get(key, palettes, counts);
+            if (cached) {
+                SwingUtilities.invokeLater(() -> {
+                    synchronized (stateLock) {
+                        if (upload != uploads)
+                            return;
+                        cachedPalettes = palettes;
+                        cachedCounts = counts;
+                    }
+                    updateVisuals();
+                    colorPaletteLabel.setText("Color Palette of '" + file.getName() + "'.");
+                });
+            }
+
+            // Stream the file straight into the algorithms rather than building a Sequence,
+            // merging the tracks so notes arrive in the order they are played
+            PaletteAlgorithm[] loaded = PaletteAlgorithms.createAll();
+            NoteReader reader = new NoteReader(loaded, true);
+            SmfReader.readMerged(file.toPath(), reader);
+            reader.finish();
+
+            if (key != null && !cached) {
+                for (int a = 0; a < ALG_COUNT; a++) {
+                    counts[a] = loaded[a].getColors(palettes[a]);
+                }
+                try {
+                    cache.put(key, palettes, counts);
+                } catch (IOException cacheError) {
+                    System.out.println("Palette not cached: " + cacheError);
+                }
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                synchronized (stateLock) {
+                    if (upload != uploads)
+                        return;
+                    // notes held or played while the file was read belong to the old palette
+                    algorithms = new LazyPaletteSet(loaded, selectedAlgorithm);
+                    algorithms.setMetrics(metrics);
+                    notes.reset();
+                    cachedPalettes = null;
+                    cachedCounts = null;
+                }
+                refreshVisuals();
+                colorPaletteLabel.setText("Color Palette of '" + file.getName() + "'.");
+            });
+        } catch (InvalidMidiDataException | IOException | RuntimeException e) {
+            System.out.println("Could not read " + file + ": " + e);
+            SwingUtilities.invokeLater(() -> {
+                synchronized (stateLock) {
+                    if (upload != uploads)
+                        return;
+                    cachedPalettes = null;
+                    cachedCounts = null;
+                }
+                updateVisuals();
+                colorPaletteLabel.setText("Could not read '" + file.getName() + "'.");
+            });
+        }
+    }
+
+    /**
+     * Open the palette cache set by the palette.cache properties. The form works
+     * without it if it cannot be opened.
+     */
+
+    private void openCache() {
+        try {
+            cache = PaletteCache.fromProperties();
+        } catch (IOException e) {
+            System.out.println("Palette cache disabled: " + e);
+        }
     }
 
     /**
@@ -66,37 +198,39 @@ public class PaletteForm {
      */
     private PaletteForm() {
 
+        String[] algorithmNames = new String[ALG_COUNT];
+        for (int i = 0; i < ALG_COUNT; i++) {
+            algorithmNames[i] = PaletteAlgorithms.name(i);
+        }
+        metrics = new PaletteMetrics(algorithmNames);
+
         initializeAlgorithms();
+        openCache();
+
+        paletteRGB = new int[PaletteAlgorithms.colors()];
 
-        chord = new ArrayList<>();
-        chord2 = new ArrayList<>();
+        algComboBox.setModel(new DefaultComboBoxModel<>(algorithmNames));
+
+        startNetworkInput();
+        startMidiWorker();
+        startRepaintTimer();
+        metrics.start(Long.getLong("palette.metrics.period", 60),
+                !"false".equals(System.getProperty("palette.metrics.log")));
 
         recordButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 try {
-                    setupMidiDevices();
+                    ArrayList<MidiDevice> selected = setupMidiDevices();
+                    if (selected.isEmpty())
+                        return;
 
                     sequencer = MidiSystem.getSequencer(); // default MIDI Sequencer
                     sequencer.open();
 
-                    // Create a custom device that can listen to MidiEvents
-                    myDevice = new MyMidiDevice();
-
-                    // input is instantiated in the setupMidiDevices() method
-                    input.open();
-
-                    transmitter = input.getTransmitter();
-
-                    // Route all info from midi through our custom device
-                    transmitter.setReceiver(myDevice);
-
                     // Get the receiver class from sequencer
                     receiver = sequencer.getReceiver();
 
-                    // Output info fed through custom device to proper receiver
-                    myDevice.setReceiver(receiver);
-
                     // Create a new sequence
                     Sequence seq = new Sequence(Sequence.PPQ, 24);
                     // And of course a track to record the input on
@@ -105,21 +239,50 @@ public class PaletteForm {
                     sequencer.setSequence(seq);
                     sequencer.setTickPosition(0);
                     sequencer.recordEnable(currentTrack, -1);
-                    // And start recording
+
+                    // Reset the algorithms, open the journal and start recording before any
+                    // device is routed, so every note reaches the .mid file and the journal
+                    initializeAlgorithms();
+                    journalFile = Files.createTempFile("palette", ".pjnl");
+                    synchronized (stateLock) {
+                        journal = new PaletteJournal.Writer(journalFile, System.nanoTime());
+                    }
                     sequencer.startRecording();
 
-                    colorPaletteLabel.setText("Awaiting MIDI input...");
+                    // Route all info from each device through a custom device with its own
+                    // ring, so one busy device never holds up another
+                    MidiEventRing[] deviceRings = new MidiEventRing[selected.size()];
+                    try {
+                        for (int i = 0; i < deviceRings.length; i++) {
+                            MidiDevice device = selected.get(i);
+                            device.open();
+                            inputs.add(device);
+
+                            deviceRings[i] = new MidiEventRing(RING_CAPACITY);
+                            MyMidiDevice myDevice = new MyMidiDevice(deviceRings[i]);
+                            // Output info fed through custom device to proper receiver
+                            myDevice.setReceiver(receiver);
+                            device.getTransmitter().setReceiver(myDevice);
+                        }
+                    } catch (MidiUnavailableException mue) {
+                        closeInputs();
+                        sequencer.stopRecording();
+                        throw mue;
+                    }
+                    setDeviceRings(deviceRings);
 
-                    initializeAlgorithms();
+                    colorPaletteLabel.setText("Awaiting MIDI input...");
                     updateVisuals();
 
                     recordButton.setEnabled(false);
                     stopButton.setEnabled(true);
                 } catch (MidiUnavailableException mue) {
+                    discardJournal();
                     JFrame frame = new JFrame();
                     JOptionPane.showMessageDialog(frame,
                             "MIDI unavailable - did you select the correct input?");
                 } catch (Exception ex){
+                    discardJournal();
                     JFrame frame = new JFrame();
                     JOptionPane.showMessageDialog(frame,
                             "Error - invalid MIDI device.");
@@ -132,9 +295,18 @@ public class PaletteForm {
             try {
                 sequencer.stopRecording(); //stop recording
 
-                transmitter.setReceiver(receiver);
+                closeInputs();
 
-                input.close();
+                PaletteJournal.Writer finishedJournal;
+                synchronized (stateLock) {
+                    // notes still sounding end with the session, and are journaled
+                    notes.finish(System.nanoTime());
+                    finishedJournal = journal;
+                    journal = null;
+                }
+                if (finishedJournal != null) {
+                    finishedJournal.close();
+                }
 
                 //save the sequence and stick it in a file
                 Sequence midiSequence = sequencer.getSequence();
@@ -149,11 +321,19 @@ public class PaletteForm {
                     }
                     String midiFile = saveFile.getDirectory() + filename;
                     MidiSystem.write(midiSequence, 0, new File(midiFile));
+                    if (journalFile != null) {
+                        Path journalTarget = Paths.get(midiFile.substring(0, midiFile.length() - ".mid".length()) + ".pjnl");
+                        Files.move(journalFile, journalTarget, StandardCopyOption.REPLACE_EXISTING);
+                    }
                     colorPaletteLabel.setText("Session saved: " + saveFile.getFile());
 
                 } else {
+                    if (journalFile != null) {
+                        Files.deleteIfExists(journalFile);
+                    }
                     colorPaletteLabel.setText("Session ended unsaved.");
                 }
+                journalFile = null;
 
                 recordButton.setEnabled(true);
                 stopButton.setEnabled(false);
@@ -170,94 +350,41 @@ public class PaletteForm {
         });
 
         uploadButton.addActionListener(e -> {
-
-            try{
-                FileDialog fd = new FileDialog(new JFrame());
-                fd.setFile("*.mid");
-                fd.setVisible(true);
-                File[] f = fd.getFiles();
-                String filePath = "";
-                if (f.length > 0) {
-                    filePath = fd.getFiles()[0].getAbsolutePath();
-                }
-
-                File playFile = new File(filePath);
-                InputStream ios = new BufferedInputStream(new FileInputStream(playFile));
-
-
-                initializeAlgorithms();
-
-                Sequence sequence = MidiSystem.getSequence(ios);
-
-                for (Track track :  sequence.getTracks()) {
-                    for (int i=0; i < track.size(); i++) {
-                        MidiEvent event = track.get(i);
-                        MidiMessage message = event.getMessage();
-                        interpretMidi(message);
-                    }
-                }
-
-                colorPaletteLabel.setText("Color Palette of '" + fd.getFiles()[0].getName() + "'.");
-
-
-            } catch (NullPointerException npe) {
-                System.out.println("No File Chosen");
-                colorPaletteLabel.setText("No file uploaded.  Please press 'Record' to start a session or upload a file.");
-            } catch (InvalidMidiDataException imde) {
-                System.out.println("Invalid Midi Data Exception");
-            } catch (IOException ioe) {
-                System.out.println("End Exception");
+            FileDialog fd = new FileDialog(new JFrame());
+            fd.setFile("*.mid");
+            fd.setVisible(true);
+            File[] f = fd.getFiles();
+            // a cancelled dialog leaves the session as it was
+            if (f.length == 0)
+                return;
+
+            int upload;
+            synchronized (stateLock) {
+                upload = ++uploads;
             }
-
+            colorPaletteLabel.setText("Reading '" + f[0].getName() + "'...");
+            Thread loader = new Thread(() -> loadFile(f[0], upload), "palette-upload");
+            loader.setDaemon(true);
+            loader.start();
         });
-        color0.addMouseListener(new MouseAdapter() {
+        swatches.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
                 super.mouseClicked(e);
+                int index = swatches.indexAt(e.getX(), e.getY());
+                if (index < 0)
+                    return;
+                String hex = ColorHex.format(swatches.getColor(index));
                 Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-                clipboard.setContents(new StringSelection(color0Label.getText()), null);
-                colorPaletteLabel.setText("Color Palette - Copied " + color0Label.getText() +" to clipboard");
-            }
-        });
-        color1.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-                super.mouseClicked(e);
-                Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-                clipboard.setContents(new StringSelection(color1Label.getText()), null);
-                colorPaletteLabel.setText("Color Palette - Copied " + color1Label.getText() +" to clipboard");
-            }
-        });
-        color2.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-                super.mouseClicked(e);
-                Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-                clipboard.setContents(new StringSelection(color2Label.getText()), null);
-                colorPaletteLabel.setText("Color Palette - Copied " + color2Label.getText() +" to clipboard");
-            }
-        });
-        color3.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-                super.mouseClicked(e);
-                Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-                clipboard.setContents(new StringSelection(color3Label.getText()), null);
-                colorPaletteLabel.setText("Color Palette - Copied " + color3Label.getText() +" to clipboard");
-            }
-        });
-        color4.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-                super.mouseClicked(e);
-                Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-                clipboard.setContents(new StringSelection(color4Label.getText()), null);
-                colorPaletteLabel.setText("Color Palette - Copied " + color4Label.getText() +" to clipboard");
+                clipboard.setContents(new StringSelection(hex), null);
+                colorPaletteLabel.setText("Color Palette - Copied " + hex +" to clipboard");
             }
         });
         algComboBox.addActionListener(e -> {
-            JComboBox cb = (JComboBox)e.getSource();
-            selectedAlgorithm = cb.getSelectedIndex();
+            selectedAlgorithm = algComboBox.getSelectedIndex();
+            synchronized (stateLock) {
+                algorithms.setActive(selectedAlgorithm);
+            }
             updateVisuals();
         });
     }
@@ -279,26 +406,57 @@ public class PaletteForm {
     }
 
     /**
-     * Prompt user with dialog to select which MIDI device they wish to use.
+     * Prompt user with dialog to select which MIDI devices they wish to use.
+     * @return The selected input devices, empty if none were chosen.
      */
-    private void setupMidiDevices(){
+    private ArrayList<MidiDevice> setupMidiDevices(){
 
+        ArrayList<MidiDevice> devices = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
         try {
-            Info[] info = MidiSystem.getMidiDeviceInfo();
-
-            String names[] = new String[info.length];
-            for(int i = 0; i < info.length; i++) {
-                names[i] = info[i].getName();
+            for (Info info : MidiSystem.getMidiDeviceInfo()) {
+                MidiDevice device = MidiSystem.getMidiDevice(info);
+                // only devices that send MIDI can be played
+                if (device instanceof Sequencer || device instanceof Synthesizer || device.getMaxTransmitters() == 0)
+                    continue;
+                devices.add(device);
+                names.add(info.getName());
             }
-
-            JFrame frame = new JFrame();
-            int n = JOptionPane.showOptionDialog(frame, "Please select MIDI device.", "Select Input", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, names, names[0]);
-
-            input = MidiSystem.getMidiDevice(info[n]);
         }
         catch (Exception e) {
             e.printStackTrace();
         }
+
+        ArrayList<MidiDevice> selected = new ArrayList<>();
+        JFrame frame = new JFrame();
+        if (devices.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "No MIDI input devices found.");
+            return selected;
+        }
+
+        JList<String> list = new JList<>(names.toArray(new String[0]));
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        list.setSelectedIndex(0);
+        Object[] message = {"Please select MIDI devices (Ctrl-click to select several).", new JScrollPane(list)};
+        int n = JOptionPane.showConfirmDialog(frame, message, "Select Inputs", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+
+        if (n == JOptionPane.OK_OPTION) {
+            for (int i : list.getSelectedIndices()) {
+                selected.add(devices.get(i));
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Close every open input device.
+     */
+
+    private void closeInputs() {
+        for (MidiDevice device : inputs) {
+            device.close();
+        }
+        inputs.clear();
     }
 
     /**
@@ -309,6 +467,12 @@ public class PaletteForm {
     {
 
         private Receiver receiver;
+        private final MidiEventRing events;
+
+        MyMidiDevice(MidiEventRing events)
+        {
+            this.events = events;
+        }
 
         @Override
         public Receiver getReceiver()
@@ -328,159 +492,297 @@ public class PaletteForm {
         @Override
         public void send(MidiMessage message, long timeStamp)
         {
-            interpretMidi(message);
+            // Only queue the event here; the worker thread updates the algorithms
+            if (message instanceof ShortMessage) {
+                long received = System.nanoTime();
+                ShortMessage sm = (ShortMessage) message;
+                events.offer(sm.getStatus(), sm.getData1(), sm.getData2(), received);
+                metrics.recordConcurrent(PaletteMetrics.RECEIVE, System.nanoTime() - received);
+            }
             this.getReceiver().send(message, timeStamp);
         }
     }
 
     /**
-     * Interpret information from a MIDI message. Update algorithms and various forms using the MIDI information.
-     * @param message a MidiMessage
+     * Start the worker thread that drains queued MIDI events into the algorithms, so the
+     * MIDI driver thread never waits on the algorithms or the UI.
      */
 
-    private void interpretMidi(MidiMessage message) {
-        int NOTE_ON = 0x90;
-        int NOTE_OFF = 0x80;
-        String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
-
-        if (message instanceof ShortMessage) {
-            ShortMessage sm = (ShortMessage) message;
-
-            if (sm.getCommand() == NOTE_ON) {
-                int key = sm.getData1();
-                int octave = (key / 12) - 1;
-                int note = key % 12;
-                String noteName = NOTE_NAMES[note];
-                int velocity = sm.getData2();
-
-                // When velocity is above zero, the key was pressed
-                // Add to chord
-                if (velocity > 0) {
-
-                    // Add notes to chord data structures
-                    if(!chord.contains(noteName + octave)) {
-                        chord.add(noteName + octave);
-                        chord2.add(octave + noteName);
-                    }
-
-                    // Update all algorithms
-                    for (int j = 0; j < ALG_COUNT; j++) {
-                        algorithm[j].add(note, velocity, octave);
-                    }
+    private void startMidiWorker() {
+        MidiEventRing.Handler handler = (status, data1, data2, nanoTime) -> {
+            long start = System.nanoTime();
+            metrics.record(PaletteMetrics.QUEUE, start - nanoTime);
+            interpretMidi(status, data1, data2, nanoTime);
+            metrics.record(PaletteMetrics.INTERPRET, System.nanoTime() - start);
+            metrics.eventApplied(nanoTime);
+            journalNote(status, data1, data2, nanoTime);
+        };
+
+        worker = new Thread(() -> {
+            while (true) {
+                MidiEventRing[] current = rings;
+                int drained;
+                synchronized (stateLock) {
+                    drained = MidiEventRing.drainMerged(current, handler, DRAIN_BATCH);
                 }
-
-                // When velocity is zero, the key was released
-                // Remove from chord
-                if (velocity == 0) {
-                    chord.remove(noteName + octave);
-                    chord2.remove(octave + noteName);
+                if (drained > 0) {
+                    visualsDirty = true;
+                    continue;
+                }
+                // with no events waiting, bring the hidden algorithms up to date a slice
+                // at a time, so new events never wait for more than one slice
+                boolean behind;
+                synchronized (stateLock) {
+                    behind = algorithms.catchUpSome(IDLE_CATCH_UP);
+                }
+                if (!behind && current == rings) {
+                    MidiEventRing.awaitAny(current);
                 }
+            }
+        }, "Palette MIDI worker");
+        worker.setDaemon(true);
+        metrics.watch(rings, worker);
+        worker.start();
+    }
 
-                // Display chord
-                colorPaletteLabel.setText(chord.toString());
-                chordLabel.setText(isMajorMinor(chord2));
+    /**
+     * Replace the rings of the open devices drained by the worker. The rings of the
+     * previous devices are kept until then, so their last events are not lost.
+     * @param deviceRings One ring per open device.
+     */
 
-                updateVisuals();
-            }
-            // Some keyboards make use of NOTE_OFF events instead of velocity = 0
-            else if (sm.getCommand() == NOTE_OFF) {
-                int key = sm.getData1();
-                int octave = (key / 12) - 1;
-                int note = key % 12;
-                String noteName = NOTE_NAMES[note];
-
-                chord.remove(noteName + octave);
-            }
+    private void setDeviceRings(MidiEventRing[] deviceRings) {
+        MidiEventRing[] all = deviceRings;
+        if (networkEvents != null) {
+            all = Arrays.copyOf(deviceRings, deviceRings.length + 1);
+            all[deviceRings.length] = networkEvents;
         }
+        rings = all;
+        metrics.watch(all, worker);
+        // wake the worker so it waits on the new rings
+        LockSupport.unpark(worker);
+    }
 
+    /**
+     * Listen for network MIDI if a port is set with -Dpalette.net.rtp=port (RTP-MIDI)
+     * or -Dpalette.net.osc=port (OSC). Network notes get a ring of their own, since
+     * each ring has a single producer.
+     */
+
+    private void startNetworkInput() {
+        int rtpPort = Integer.getInteger("palette.net.rtp", 0);
+        int oscPort = Integer.getInteger("palette.net.osc", 0);
+        if (rtpPort <= 0 && oscPort <= 0)
+            return;
+
+        MidiEventRing networkRing = new MidiEventRing(RING_CAPACITY);
+        try {
+            network = new NetworkMidiInput(networkRing);
+            if (rtpPort > 0)
+                network.bind(rtpPort, NetworkMidiInput.Protocol.RTP_MIDI);
+            if (oscPort > 0)
+                network.bind(oscPort, NetworkMidiInput.Protocol.OSC);
+            network.start();
+            networkEvents = networkRing;
+            rings = new MidiEventRing[] {networkRing};
+        } catch (IOException ioe) {
+            System.out.println("Network MIDI unavailable: " + ioe.getMessage());
+            if (network != null) {
+                try {
+                    network.close();
+                } catch (IOException ignored) { }
+                network = null;
+            }
+        }
     }
 
     /**
-     * Update the colors displayed using the selected algorithm's palette.
+     * Close and delete the journal of a session that failed to start.
      */
 
-    private void updateVisuals() {
-        Color[] colors = algorithm[selectedAlgorithm].getColors();
-
-        color0.setBackground(colors[0]);
-        color1.setBackground(colors[1]);
-        color2.setBackground(colors[2]);
-        color3.setBackground(colors[3]);
-        color4.setBackground(colors[4]);
-        color0Label.setText(String.format("#%02x%02x%02x", colors[0].getRed(), colors[0].getGreen(), colors[0].getBlue()));
-        color1Label.setText(String.format("#%02x%02x%02x", colors[1].getRed(), colors[1].getGreen(), colors[1].getBlue()));
-        color2Label.setText(String.format("#%02x%02x%02x", colors[2].getRed(), colors[2].getGreen(), colors[2].getBlue()));
-        color3Label.setText(String.format("#%02x%02x%02x", colors[3].getRed(), colors[3].getGreen(), colors[3].getBlue()));
-        color4Label.setText(String.format("#%02x%02x%02x", colors[4].getRed(), colors[4].getGreen(), colors[4].getBlue()));
+    private void discardJournal() {
+        PaletteJournal.Writer failed;
+        synchronized (stateLock) {
+            failed = journal;
+            journal = null;
+        }
+        try {
+            if (failed != null)
+                failed.close();
+            if (journalFile != null)
+                Files.deleteIfExists(journalFile);
+        } catch (IOException ignored) { }
+        journalFile = null;
     }
 
     /**
-     * Determine the major / minor construction of a chord.
-     * @param notes the string of notes played in the chord.
-     * @return a string describing the chord.
+     * Append a played note to the session journal, if a session is being recorded.
+     * The caller must hold stateLock.
+     * @param status the status byte, command and channel
+     * @param data1 the first data byte
+     * @param data2 the second data byte
+     * @param nanoTime when the event was received
      */
 
-    private String isMajorMinor(ArrayList<String> notes) {
-        int chordSize = notes.size();
-        if (chordSize < 3){
-            return "";
+    private void journalNote(int status, int data1, int data2, long nanoTime) {
+        if (journal == null || (status & 0xF0) != 0x90 || data2 == 0)
+            return;
+
+        try {
+            journal.append(nanoTime, data1 % 12, data2, (data1 / 12) - 1, status & 0x0F);
+        } catch (IOException ioe) {
+            journalFailed();
         }
+    }
+
+    /**
+     * Stop journaling after a failed write. The caller must hold stateLock.
+     */
 
-        String[] arr1 = {"A", "A#", "B", "C", "C#","D", "D#", "E", "F", "F#","G", "G#"};
-        ArrayList<String> notesMaster = new ArrayList<>(Arrays.asList(arr1));
+    private void journalFailed() {
+        System.out.println("Journal write failed - the session journal is incomplete");
+        try {
+            journal.close();
+        } catch (IOException ignored) { }
+        journal = null;
+    }
 
-        String[] arr2 = {"C", "C#","D", "D#", "E", "F", "F#","G", "G#", "A", "A#", "B"}; //notes in keyboard order
-        ArrayList<String> notesMaster2 = new ArrayList<>(Arrays.asList(arr2));
+    /**
+     * Start a timer on the event dispatch thread that ticks once per display frame. It
+     * reads the palette only when the worker has processed new events since the last
+     * frame, and moves the swatches one frame further towards it, so rendering costs
+     * the same whether notes arrive slowly or hundreds of times per second.
+     */
 
-        //sort based on order on the keyboard instead of order played
-        notes.sort((o1, o2) -> {
-            if (o1.substring(0, 1).equals(o2.substring(0, 1))) //in the same octave, use order specified above
-                return Integer.compare(notesMaster2.indexOf(o1.substring(1)), notesMaster2.indexOf(o2.substring(1)));
-            else
-                return o1.substring(0, 1).compareTo(o2.substring(0, 1));
+    private void startRepaintTimer() {
+        swatches.setTransitionMillis(Integer.getInteger("palette.transition", 150));
+        javax.swing.Timer repaintTimer = new javax.swing.Timer(framePeriodMillis(), e -> {
+            if (visualsDirty) {
+                refreshVisuals();
+            }
+            swatches.animate(System.nanoTime());
         });
+        repaintTimer.setCoalesce(true);
+        repaintTimer.start();
+    }
 
-        ArrayList<Integer> intervals = new ArrayList<>();
+    /**
+     * Find the length of one frame of the default screen.
+     * @return the frame period in milliseconds, assuming 60Hz when the rate is unknown.
+     */
 
-        int indexA = notesMaster.indexOf(notes.get(0).substring(1));
-        int interval, indexB;
+    private static int framePeriodMillis() {
+        int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+        try {
+            refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        } catch (HeadlessException ignored) { }
 
-        for(int i = 1; i < chordSize; i++){
+        if (refreshRate <= 0) {
+            refreshRate = 60;
+        }
+        return Math.max(1, 1000 / refreshRate);
+    }
 
-            //get the index of the note, use substring to exclude the octave
-            indexB = notesMaster.indexOf(notes.get(i).substring(1));
+    /**
+     * Interpret information from a short MIDI message, given as its raw bytes. Update algorithms
+     * and the sounding notes using the MIDI information. The caller must hold stateLock.
+     * @param status the status byte, command and channel
+     * @param data1 the first data byte
+     * @param data2 the second data byte
+     * @param nanoTime when the event was received
+     */
 
-            interval = indexB-indexA;
+    private void interpretMidi(int status, int data1, int data2, long nanoTime) {
+        int NOTE_ON = 0x90;
 
-            if (interval <0){
-                interval +=12;
-            }
-            intervals.add(interval);
+        // Follow keys and pedals; notes that stop sounding are released into the algorithms
+        notes.handle(status, data1, data2, nanoTime);
 
-            indexA = indexB;
+        // When velocity is above zero, the key was pressed
+        if ((status & 0xF0) == NOTE_ON && data2 > 0) {
+            // Update all algorithms
+            algorithms.add(data1 % 12, data2, (data1 / 12) - 1);
         }
+    }
 
-        //interval of 5/4/3 == Major
-        //intervals of 3/4/5 == Minor
+    /**
+     * Release a note that stopped sounding into the algorithms and the session journal.
+     * The caller must hold stateLock.
+     * @param channel the MIDI channel the note was played on
+     * @param key the MIDI key number, 0 to 127
+     * @param velocity the velocity the key was struck with
+     * @param onset when the note started, in nanoseconds
+     * @param end when the note stopped sounding, in nanoseconds
+     */
 
-        if (intervals.contains(3) && intervals.contains(4)){
-            if (intervals.indexOf(3) < intervals.indexOf(4)){
-                return notes.get(0).substring(1) + " MINOR ROOT\n";
-            }
-            return  notes.get(0).substring(1) + " MAJOR ROOT\n";
+    private void noteEnded(int channel, int key, int velocity, long onset, long end) {
+        algorithms.release(key % 12, velocity, (key / 12) - 1, (end - onset) / 1000);
+        if (journal == null)
+            return;
+
+        try {
+            journal.appendRelease(end, key % 12, velocity, (key / 12) - 1, channel, (end - onset) / 1000);
+        } catch (IOException ioe) {
+            journalFailed();
         }
-        else if (intervals.contains(5) && intervals.contains(4)){
-            if (intervals.indexOf(4) < intervals.indexOf(5)){
-                return notes.get(1).substring(1) + " MINOR, 2ND INVERSION\n";
+    }
+
+    /**
+     * Display the held chord and the selected algorithm's palette. Runs on the event
+     * dispatch thread, at most once per frame during live play.
+     */
+
+    private void refreshVisuals() {
+        long start = System.nanoTime();
+        String heldNotes;
+        String chordText;
+        long oldestEvent;
+        synchronized (stateLock) {
+            visualsDirty = false;
+            // name the sounding notes from low to high, using the lowest as the bass
+            StringBuilder held = new StringBuilder("[");
+            int lowestKey = notes.nextSounding(0);
+            for (int key = lowestKey; key >= 0; key = notes.nextSounding(key + 1)) {
+                if (key != lowestKey)
+                    held.append(", ");
+                held.append(NOTE_NAMES[key % 12]).append((key / 12) - 1);
             }
-            return notes.get(1).substring(1) + " MAJOR, 2ND INVERSION\n";
+            heldNotes = held.append(']').toString();
+            chordText = lowestKey < 0 ? ""
+                    : ChordTable.label(ChordTable.lookup(notes.getPitchClasses(), lowestKey % 12));
+            oldestEvent = metrics.takeFrame();
+        }
+
+        // Display chord
+        colorPaletteLabel.setText(heldNotes);
+        chordLabel.setText(chordText);
+
+        updateVisuals();
+
+        long end = System.nanoTime();
+        metrics.record(PaletteMetrics.REPAINT, end - start);
+        if (oldestEvent != PaletteMetrics.NO_EVENTS) {
+            metrics.record(PaletteMetrics.END_TO_END, end - oldestEvent);
         }
-        else if (intervals.contains(3) && intervals.contains(5)) {
-            if (intervals.indexOf(3) > intervals.indexOf(5)) {
-                return notes.get(2).substring(1) + " MINOR  1ST INVERSION\n";
+    }
+
+    /**
+     * Update the colors displayed using the selected algorithm's palette.
+     */
+
+    private void updateVisuals() {
+        int count;
+        synchronized (stateLock) {
+            if (cachedPalettes != null) {
+                count = cachedCounts[selectedAlgorithm];
+                System.arraycopy(cachedPalettes[selectedAlgorithm], 0, paletteRGB, 0, count);
+            } else {
+                count = algorithms.getColors(selectedAlgorithm, paletteRGB);
             }
-            return notes.get(2).substring(1) + " MAJOR, 1ST INVERSION\n";
         }
-        return "";
+
+        // Only swatches whose color changed are repainted
+        swatches.setColors(paletteRGB, count);
     }
 }
@@ -0,0 +1,791 @@
+import javax.sound.midi.InvalidMidiDataException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The PaletteIndex class finds the songs of an analysed library whose palettes are
+ * closest to a given palette: the k nearest, or all within a distance.
+ *
+ * Each five-color palette is a point in OKLab, the five colors' L, a and b in
+ * palette order, and palettes are compared by the Euclidean distance between their
+ * points, so equal distances look like equally different palettes. The points are
+ * kept in a vantage-point tree laid out in one array: the node of a range of the
+ * array is its first point, and the rest of the range is split around the median
+ * distance from it, the nearer half first, so the tree needs no child pointers. Each node keeps the nearest and farthest
+ * distance of both halves, and a query skips a half whose shell of distances cannot
+ * hold a point closer than the ones it has found. Ranges of up to 16 points are
+ * leaves, scanned in order, which is faster than splitting them further.
+ *
+ * An index file holds the tree, the shells, the colors and the song names, and is
+ * memory-mapped when opened, so even a library of 100k songs opens instantly. The
+ * points and shells, which every query reads, are stored little-endian, the byte
+ * order of x86 and ARM, and copied to arrays in one block; the colors and names
+ * stay in the file until a result is shown.
+ *
+ * Usage:
+ *     PaletteIndex build &lt;directory or PaletteBatch .csv&gt; &lt;index&gt; [--algorithm name]
+ *     PaletteIndex nearest &lt;index&gt; &lt;file.mid or five colors&gt; [--k n]
+ *     PaletteIndex within &lt;index&gt; &lt;file.mid or five colors&gt; &lt;distance&gt;
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public final class PaletteIndex {
+
+    private static final int MAGIC = 0x50494458; // "PIDX"
+    private static final short VERSION = 1;
+    private static final int COLORS = 5;
+    private static final int DIMENSIONS = 3 * COLORS;
+
+    // ranges this small are leaves, scanned rather than split
+    private static final int LEAF_SIZE = 16;
+    // vantage points tried per node when building, and the points each is measured against
+    private static final int VANTAGE_CANDIDATES = 8;
+    private static final int VANTAGE_SAMPLE = 32;
+    // the nearest and farthest distance of the near half, then of the far half
+    private static final int BOUNDS = 4;
+    // slack for distances rounded to floats
+    private static final float EPSILON = 1e-5f;
+
+    private final String algorithm;
+    private final int size;
+    private final float[] points;
+    private final float[] bounds;
+    private final IntBuffer colors;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer names;
+
+    /**
+     * Open an index file.
+     * @param file The index, written by write().
+     */
+
+    public PaletteIndex(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < 16 || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not a palette index: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a palette index: " + file);
+        }
+        if (buffer.getShort(4) != VERSION || buffer.getShort(6) != COLORS) {
+            throw new IOException("Unsupported index version " + buffer.getShort(4) + ": " + file);
+        }
+        size = buffer.getInt(8);
+        int nameLength = buffer.getShort(12) & 0xffff;
+        byte[] bytes = new byte[nameLength];
+        buffer.position(14);
+        buffer.get(bytes);
+        algorithm = new String(bytes, StandardCharsets.UTF_8);
+
+        int pos = align(14 + nameLength);
+        long end = pos + 4L * size * (DIMENSIONS + BOUNDS + COLORS + 1) + 4;
+        if (size < 0 || end > buffer.limit()) {
+            throw new IOException("Truncated palette index: " + file);
+        }
+        points = new float[size * DIMENSIONS];
+        slice(buffer, pos, 4 * size * DIMENSIONS).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(points);
+        pos += 4 * size * DIMENSIONS;
+        bounds = new float[size * BOUNDS];
+        slice(buffer, pos, 4 * size * BOUNDS).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(bounds);
+        pos += 4 * size * BOUNDS;
+        colors = slice(buffer, pos, 4 * size * COLORS).asIntBuffer();
+        pos += 4 * size * COLORS;
+        nameOffsets = slice(buffer, pos, 4 * (size + 1)).asIntBuffer();
+        pos += 4 * (size + 1);
+        names = slice(buffer, pos, buffer.limit() - pos);
+        if (nameOffsets.get(size) > names.limit()) {
+            throw new IOException("Truncated palette index: " + file);
+        }
+    }
+
+    /**
+     * @return The name of the algorithm the palettes were made with.
+     */
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return The number of songs.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param song The index of a song, as returned by a query.
+     * @return The song's name, usually its file.
+     */
+
+    public String getName(int song) {
+        int start = nameOffsets.get(song);
+        byte[] bytes = new byte[nameOffsets.get(song + 1) - start];
+        ByteBuffer view = names.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param song The index of a song, as returned by a query.
+     * @param rgb Filled with the song's five colors, packed as 0xRRGGBB.
+     */
+
+    public void getColors(int song, int[] rgb) {
+        for (int c = 0; c < COLORS; c++) {
+            rgb[c] = colors.get(song * COLORS + c);
+        }
+    }
+
+    /**
+     * Find the songs with the palettes closest to a palette.
+     * @param palette Five colors, packed as 0xRRGGBB.
+     * @param found Filled with the songs found, nearest first; its length is the number wanted.
+     * @param distances Filled with the distance of each song found.
+     * @return The number of songs found, fewer than found.length only if the index is smaller.
+     */
+
+    public int nearest(int[] palette, int[] found, float[] distances) {
+        Search search = new Search(palette, found, distances, Float.POSITIVE_INFINITY, true);
+        search.run(0, size);
+        return search.sortFound();
+    }
+
+    /**
+     * Find the songs with palettes within a distance of a palette.
+     * @param palette Five colors, packed as 0xRRGGBB.
+     * @param distance The largest distance.
+     * @param found Filled with the songs found, nearest first, up to its length.
+     * @param distances Filled with the distance of each song found.
+     * @return The number of songs found; if it equals found.length there may be more.
+     */
+
+    public int within(int[] palette, float distance, int[] found, float[] distances) {
+        Search search = new Search(palette, found, distances, distance, false);
+        search.run(0, size);
+        return search.sortFound();
+    }
+
+    /**
+     * One query: the point searched for, and the best songs found so far, kept in
+     * found and distances as a max-heap on distance.
+     */
+
+    private final class Search {
+
+        private final float[] point = new float[DIMENSIONS];
+        private final int[] found;
+        private final float[] distances;
+        private final boolean bounded;
+        private int count;
+        // the distance a song must beat to be found
+        private float limit;
+
+        Search(int[] palette, int[] found, float[] distances, float limit, boolean bounded) {
+            toPoint(palette, 0, point, 0, 1);
+            this.found = found;
+            this.distances = distances;
+            this.limit = limit;
+            this.bounded = bounded;
+        }
+
+        /**
+         * Search the subtree of a range of the array.
+         * @param lo The node, the first point of the range.
+         * @param hi The end of the range.
+         */
+
+        void run(int lo, int hi) {
+            if (lo >= hi || found.length == 0)
+                return;
+            if (hi - lo <= LEAF_SIZE) {
+                for (int i = lo; i < hi; i++) {
+                    float d = distanceWithin(i);
+                    if (d <= limit)
+                        add(i, d);
+                }
+                return;
+            }
+
+            float d = distanceTo(lo);
+            if (d <= limit)
+                add(lo, d);
+
+            int mid = (lo + 1 + hi) >>> 1;
+            int b = lo * BOUNDS;
+            float nearGap = gap(d, bounds[b], bounds[b + 1]);
+            float farGap = gap(d, bounds[b + 2], bounds[b + 3]);
+            // search the half more likely to hold the nearest songs first
+            if (nearGap <= farGap) {
+                if (nearGap <= limit + EPSILON)
+                    run(lo + 1, mid);
+                if (farGap <= limit + EPSILON)
+                    run(mid, hi);
+            } else {
+                if (farGap <= limit + EPSILON)
+                    run(mid, hi);
+                if (nearGap <= limit + EPSILON)
+                    run(lo + 1, mid);
+            }
+        }
+
+        /**
+         * The least distance from the query to any point of a half, by the triangle inequality.
+         * @param d The distance from the query to the node.
+         * @param nearest The nearest distance of the half from the node.
+         * @param farthest The farthest distance of the half from the node.
+         */
+
+        private float gap(float d, float nearest, float farthest) {
+            return Math.max(0, Math.max(nearest - d, d - farthest));
+        }
+
+        private float distanceTo(int node) {
+            int base = node * DIMENSIONS;
+            float sum = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                float diff = points[base + i] - point[i];
+                sum += diff * diff;
+            }
+            return (float) Math.sqrt(sum);
+        }
+
+        /**
+         * The distance to a point, or infinity as soon as it is known to be over the limit.
+         */
+
+        private float distanceWithin(int node) {
+            int base = node * DIMENSIONS;
+            float max = (limit + EPSILON) * (limit + EPSILON);
+            float sum = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                float diff = points[base + i] - point[i];
+                sum += diff * diff;
+                // checked once per color
+                if (i % 3 == 2 && sum > max)
+                    return Float.POSITIVE_INFINITY;
+            }
+            return (float) Math.sqrt(sum);
+        }
+
+        private void add(int song, float d) {
+            if (count < found.length) {
+                found[count] = song;
+                distances[count] = d;
+                siftUp(count++);
+                if (bounded && count == found.length)
+                    limit = distances[0];
+            } else if (d < distances[0]) {
+                // replace the farthest
+                found[0] = song;
+                distances[0] = d;
+                siftDown(0, count);
+                if (bounded)
+                    limit = distances[0];
+            }
+        }
+
+        /**
+         * Sort the heap into ascending order of distance.
+         * @return The number of songs found.
+         */
+
+        int sortFound() {
+            for (int n = count - 1; n > 0; n--) {
+                swap(0, n);
+                siftDown(0, n);
+            }
+            return count;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distances[i])
+                    break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int n) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n)
+                    break;
+                if (child + 1 < n && distances[child + 1] > distances[child])
+                    child++;
+                if (distances[i] >= distances[child])
+                    break;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int song = found[a];
+            found[a] = found[b];
+            found[b] = song;
+            float d = distances[a];
+            distances[a] = distances[b];
+            distances[b] = d;
+        }
+    }
+
+    /**
+     * Build an index and write it to a file.
+     * @param file The index file to write.
+     * @param algorithm The name of the algorithm the palettes were made with.
+     * @param songs The name of each song.
+     * @param palettes Five colors per song, packed as 0xRRGGBB, in the order of songs.
+     */
+
+    public static void write(Path file, String algorithm, List<String> songs, int[] palettes) throws IOException {
+        int n = songs.size();
+        float[] source = new float[n * DIMENSIONS];
+        toPoint(palettes, 0, source, 0, n);
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        float[] shells = new float[n * BOUNDS];
+        new TreeBuilder(source, order, shells).build(0, n);
+
+        byte[][] names = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            names[i] = songs.get(order[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] algorithmName = algorithm.getBytes(StandardCharsets.UTF_8);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(COLORS);
+            out.writeInt(n);
+            out.writeShort(algorithmName.length);
+            out.write(algorithmName);
+            for (int pad = 14 + algorithmName.length; pad < align(14 + algorithmName.length); pad++) {
+                out.writeByte(0);
+            }
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < DIMENSIONS; j++) {
+                    writeFloatLittleEndian(out, source[order[i] * DIMENSIONS + j]);
+                }
+            }
+            for (float bound : shells) {
+                writeFloatLittleEndian(out, bound);
+            }
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < COLORS; c++) {
+                    out.writeInt(palettes[order[i] * COLORS + c] & 0xffffff);
+                }
+            }
+            int offset = 0;
+            for (int i = 0; i < n; i++) {
+                out.writeInt(offset);
+                offset += names[i].length;
+            }
+            out.writeInt(offset);
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * Arranges the points into the vantage-point tree: each range is split around
+     * the median distance to its first point, the vantage point.
+     */
+
+    private static final class TreeBuilder {
+
+        private final float[] source;
+        private final int[] order;
+        private final float[] shells;
+        private final float[] distance;
+        private final Random random = new Random(1);
+
+        TreeBuilder(float[] source, int[] order, float[] shells) {
+            this.source = source;
+            this.order = order;
+            this.shells = shells;
+            this.distance = new float[order.length];
+        }
+
+        void build(int lo, int hi) {
+            if (hi - lo <= LEAF_SIZE)
+                return;
+
+            swap(lo, chooseVantage(lo, hi));
+            for (int i = lo + 1; i < hi; i++) {
+                distance[i] = distance(order[lo], order[i]);
+            }
+            int mid = (lo + 1 + hi) >>> 1;
+            select(lo + 1, hi - 1, mid);
+            shell(lo, lo + 1, mid, 0);
+            shell(lo, mid, hi, 2);
+
+            build(lo + 1, mid);
+            build(mid, hi);
+        }
+
+        /**
+         * Pick the vantage point of a range: of a few random candidates, the one whose
+         * distances to a sample of the range are the most spread out, as it splits the
+         * range into the best separated halves.
+         * @return The position of the vantage point.
+         */
+
+        private int chooseVantage(int lo, int hi) {
+            int best = lo;
+            double bestSpread = -1;
+            for (int c = 0; c < VANTAGE_CANDIDATES; c++) {
+                int candidate = lo + random.nextInt(hi - lo);
+                double sum = 0;
+                double sumOfSquares = 0;
+                for (int s = 0; s < VANTAGE_SAMPLE; s++) {
+                    double d = distance(order[candidate], order[lo + random.nextInt(hi - lo)]);
+                    sum += d;
+                    sumOfSquares += d * d;
+                }
+                double spread = sumOfSquares - sum * sum / VANTAGE_SAMPLE;
+                if (spread > bestSpread) {
+                    best = candidate;
+                    bestSpread = spread;
+                }
+            }
+            return best;
+        }
+
+        private void shell(int node, int from, int to, int offset) {
+            float nearest = Float.POSITIVE_INFINITY;
+            float farthest = 0;
+            for (int i = from; i < to; i++) {
+                nearest = Math.min(nearest, distance[i]);
+                farthest = Math.max(farthest, distance[i]);
+            }
+            shells[node * BOUNDS + offset] = nearest;
+            shells[node * BOUNDS + offset + 1] = farthest;
+        }
+
+        private float distance(int a, int b) {
+            float sum = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                float diff = source[a * DIMENSIONS + i] - source[b * DIMENSIONS + i];
+                sum += diff * diff;
+            }
+            return (float) Math.sqrt(sum);
+        }
+
+        /**
+         * Partially sort [left, right] by distance so position k holds the value it
+         * would in sorted order, smaller or equal values before it and larger or equal after.
+         */
+
+        private void select(int left, int right, int k) {
+            while (right > left) {
+                float pivot = distance[(left + right) >>> 1];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (distance[i] < pivot)
+                        i++;
+                    while (distance[j] > pivot)
+                        j--;
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j)
+                    right = j;
+                else if (k >= i)
+                    left = i;
+                else
+                    return;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int o = order[a];
+            order[a] = order[b];
+            order[b] = o;
+            float d = distance[a];
+            distance[a] = distance[b];
+            distance[b] = d;
+        }
+    }
+
+    /**
+     * Convert palettes to points: the OKLab L, a and b of each color in turn.
+     */
+
+    private static void toPoint(int[] palettes, int paletteOffset, float[] points, int pointOffset, int count) {
+        int colorCount = count * COLORS;
+        float[] lightness = new float[colorCount];
+        float[] a = new float[colorCount];
+        float[] b = new float[colorCount];
+        PerceptualColor.rgbToOklab(palettes, paletteOffset * COLORS, lightness, a, b, 0, colorCount);
+        for (int i = 0; i < colorCount; i++) {
+            int p = pointOffset * DIMENSIONS + 3 * i;
+            points[p] = lightness[i];
+            points[p + 1] = a[i];
+            points[p + 2] = b[i];
+        }
+    }
+
+    private static void writeFloatLittleEndian(DataOutputStream out, float value) throws IOException {
+        out.writeInt(Integer.reverseBytes(Float.floatToIntBits(value)));
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("build")) {
+            String algorithmName = PaletteAlgorithms.name(0);
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].equals("--algorithm") && i + 1 < args.length)
+                    algorithmName = args[++i];
+            }
+            build(Paths.get(args[1]), Paths.get(args[2]), algorithmName);
+        } else if (args.length >= 3 && (args[0].equals("nearest") || args[0].equals("within"))) {
+            query(args);
+        } else {
+            System.err.println("Usage: PaletteIndex build <directory or PaletteBatch .csv> <index> [--algorithm name]");
+            System.err.println("       PaletteIndex nearest <index> <file.mid or five colors> [--k n]");
+            System.err.println("       PaletteIndex within <index> <file.mid or five colors> <distance>");
+            System.exit(2);
+        }
+    }
+
+    private static void build(Path source, Path file, String algorithmName) throws IOException {
+        int algorithm = PaletteAlgorithms.indexOf(algorithmName);
+        if (algorithm < 0) {
+            System.err.println("No algorithm named " + algorithmName);
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        List<String> songs = new ArrayList<>();
+        int[] palettes;
+        if (Files.isDirectory(source)) {
+            palettes = analyzeAll(source, algorithm, songs);
+        } else {
+            palettes = readBatchCsv(source, algorithmName, songs);
+        }
+        long analysed = System.nanoTime();
+        write(file, algorithmName, songs, palettes);
+        System.out.printf("%d palettes of %s, read in %d ms, indexed in %d ms%n", songs.size(), algorithmName,
+                (analysed - start) / 1_000_000, (System.nanoTime() - analysed) / 1_000_000);
+    }
+
+    /**
+     * Analyse every MIDI file under a directory, in parallel.
+     * @return Five colors per song, in the order of songs.
+     */
+
+    private static int[] analyzeAll(Path root, int algorithm, List<String> songs) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).filter(PaletteBatch::isMidiFile).collect(Collectors.toList());
+        }
+
+        int[] palettes = new int[files.size() * COLORS];
+        boolean[] ok = new boolean[files.size()];
+        IntStream.range(0, files.size()).parallel().forEach(i -> {
+            Path file = files.get(i);
+            try {
+                PaletteAlgorithm[] one = {PaletteAlgorithms.create(algorithm, COLORS)};
+                PaletteBatch.analyze(file.toFile(), one);
+                ok[i] = fill(one[0], palettes, i);
+            } catch (InvalidMidiDataException | IOException e) {
+                System.err.println(file + ": " + e.getMessage());
+            }
+        });
+
+        int kept = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (!ok[i])
+                continue;
+            songs.add(files.get(i).toString());
+            System.arraycopy(palettes, i * COLORS, palettes, kept * COLORS, COLORS);
+            kept++;
+        }
+        return Arrays.copyOf(palettes, kept * COLORS);
+    }
+
+    /**
+     * Copy an algorithm's palette, repeating its last color if it has fewer than five.
+     * @return false if the palette is empty.
+     */
+
+    private static boolean fill(PaletteAlgorithm algorithm, int[] palettes, int song) {
+        int[] rgb = new int[COLORS];
+        int count = algorithm.getColors(rgb);
+        if (count == 0)
+            return false;
+        for (int c = 0; c < COLORS; c++) {
+            palettes[song * COLORS + c] = rgb[Math.min(c, count - 1)];
+        }
+        return true;
+    }
+
+    /**
+     * Read the palettes of one algorithm from the CSV output of PaletteBatch.
+     * @return Five colors per song, in the order of songs.
+     */
+
+    private static int[] readBatchCsv(Path csv, String algorithmName, List<String> songs) throws IOException {
+        int[] palettes = new int[1024 * COLORS];
+        int count = 0;
+        for (String line : Files.readAllLines(csv, StandardCharsets.UTF_8)) {
+            // the file name is quoted if it holds a comma or a quote
+            String name;
+            int rest;
+            if (line.startsWith("\"")) {
+                StringBuilder sb = new StringBuilder();
+                int i = 1;
+                while (i < line.length()) {
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            sb.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                name = sb.toString();
+                rest = i;
+            } else {
+                rest = line.indexOf(',');
+                if (rest < 0)
+                    continue;
+                name = line.substring(0, rest);
+            }
+
+            String[] fields = line.substring(Math.min(rest + 1, line.length())).split(",", -1);
+            if (fields.length < 1 + COLORS || !fields[0].equals(algorithmName) || fields[1].isEmpty())
+                continue;
+
+            if (count == palettes.length / COLORS)
+                palettes = Arrays.copyOf(palettes, palettes.length * 2);
+            try {
+                for (int c = 0; c < COLORS; c++) {
+                    palettes[count * COLORS + c] = ColorHex.parse(fields[1 + c]);
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            songs.add(name);
+            count++;
+        }
+        return Arrays.copyOf(palettes, count * COLORS);
+    }
+
+    private static void query(String[] args) throws IOException {
+        PaletteIndex index = new PaletteIndex(Paths.get(args[1]));
+        boolean nearest = args[0].equals("nearest");
+
+        // the palette is either five colors or a MIDI file to analyse
+        int[] palette = new int[COLORS];
+        int next;
+        if (args.length >= 2 + COLORS && args[2].matches("#?[0-9a-fA-F]{6}")) {
+            for (int c = 0; c < COLORS; c++) {
+                palette[c] = ColorHex.parse(args[2 + c]);
+            }
+            next = 2 + COLORS;
+        } else {
+            int algorithm = PaletteAlgorithms.indexOf(index.getAlgorithm());
+            if (algorithm < 0) {
+                System.err.println("No algorithm named " + index.getAlgorithm());
+                System.exit(2);
+            }
+            PaletteAlgorithm[] one = {PaletteAlgorithms.create(algorithm, COLORS)};
+            try {
+                PaletteBatch.analyze(Paths.get(args[2]).toFile(), one);
+            } catch (InvalidMidiDataException e) {
+                System.err.println(args[2] + ": " + e.getMessage());
+                System.exit(1);
+            }
+            if (!fill(one[0], palette, 0)) {
+                System.err.println(args[2] + " has no notes");
+                System.exit(1);
+            }
+            next = 3;
+        }
+
+        int k = 10;
+        float distance = 0;
+        if (nearest) {
+            for (int i = next; i < args.length; i++) {
+                if (args[i].equals("--k") && i + 1 < args.length)
+                    k = Integer.parseInt(args[++i]);
+            }
+        } else {
+            if (next >= args.length) {
+                System.err.println("Missing the distance");
+                System.exit(2);
+            }
+            distance = Float.parseFloat(args[next]);
+            k = Math.min(index.size(), 1000);
+        }
+
+        int[] found = new int[k];
+        float[] distances = new float[k];
+        long start = System.nanoTime();
+        int count = nearest
+                ? index.nearest(palette, found, distances)
+                : index.within(palette, distance, found, distances);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        int[] rgb = new int[COLORS];
+        for (int i = 0; i < count; i++) {
+            index.getColors(found[i], rgb);
+            StringBuilder sb = new StringBuilder(String.format("%8.4f ", distances[i]));
+            for (int c : rgb) {
+                sb.append(ColorHex.format(c)).append(' ');
+            }
+            System.out.println(sb.append(index.getName(found[i])));
+        }
+        System.out.println(count + " of " + index.size() + " songs (" + index.getAlgorithm() + ") in " + micros + " us");
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The PaletteJournal class reads and writes palette journals: compact, append-only
+ * binary logs of the notes played in a live session, recorded alongside the MIDI
+ * file so a session's palettes can be reproduced exactly and quickly.
+ *
+ * A journal is a 16 byte header followed by one 8 byte record per note, and two per
+ * release, when a note stops sounding:
+ *
+ *     header:  int magic "PJNL", short version, short unused, long start time (epoch ms)
+ *     note:    int time (ms since start), byte note, byte velocity, byte octave, byte channel
+ *     release: the same with RELEASE set in the channel byte, then long micros held
+ *
+ * Replaying maps the file into memory and feeds each record straight to the
+ * algorithms, without any MIDI parsing, in the order they were played: releases
+ * to release(), so DURATION_WEIGHTED algorithms are reproduced too.
+ *
+ * @version 1.1
+ * @since 2026-10-18
+ */
+
+public final class PaletteJournal {
+
+    /**
+     * Receives the notes of a journal during replay.
+     */
+    public interface Handler {
+        void onNote(int timeMillis, int note, int velocity, int octave, int channel);
+
+        default void onRelease(int timeMillis, int note, int velocity, int octave, int channel, long micros) { }
+    }
+
+    private static final int MAGIC = 0x504a4e4c; // "PJNL"
+    private static final short VERSION = 2;
+    // set in the channel byte of a release record
+    private static final int RELEASE = 0x80;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 8;
+
+    private PaletteJournal() { }
+
+    /**
+     * Writes a journal while a session is recorded. Not thread-safe; append from
+     * the thread that feeds the algorithms.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final long startNanos;
+
+        /**
+         * Create or truncate a journal file.
+         * @param file The journal file.
+         * @param startNanos The System.nanoTime() the session started at; record times are relative to it.
+         */
+
+        public Writer(Path file, long startNanos) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 8192).order(ByteOrder.BIG_ENDIAN);
+            this.startNanos = startNanos;
+
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putShort((short) 0);
+            buffer.putLong(System.currentTimeMillis());
+        }
+
+        /**
+         * Append a note.
+         * @param nanoTime When the note was played, from System.nanoTime().
+         * @param note The note, 0 to 11.
+         * @param velocity The velocity, 1 to 127.
+         * @param octave The octave, -1 to 9.
+         * @param channel The MIDI channel, 0 to 15.
+         */
+
+        public void append(long nanoTime, int note, int velocity, int octave, int channel) throws IOException {
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            put(nanoTime, note, velocity, octave, channel);
+        }
+
+        /**
+         * Append a note that stopped sounding.
+         * @param nanoTime When the note stopped sounding, from System.nanoTime().
+         * @param note The note, 0 to 11.
+         * @param velocity The velocity it was struck with, 1 to 127.
+         * @param octave The octave, -1 to 9.
+         * @param channel The MIDI channel, 0 to 15.
+         * @param micros How long the note sounded, in microseconds.
+         */
+
+        public void appendRelease(long nanoTime, int note, int velocity, int octave, int channel,
+                                  long micros) throws IOException {
+            if (buffer.remaining() < 2 * RECORD_SIZE) {
+                flush();
+            }
+            put(nanoTime, note, velocity, octave, channel | RELEASE);
+            buffer.putLong(Math.max(0, micros));
+        }
+
+        private void put(long nanoTime, int note, int velocity, int octave, int channel) {
+            long millis = Math.max(0, (nanoTime - startNanos) / 1_000_000);
+            buffer.putInt((int) Math.min(Integer.MAX_VALUE, millis));
+            buffer.put((byte) note);
+            buffer.put((byte) velocity);
+            buffer.put((byte) octave);
+            buffer.put((byte) channel);
+        }
+
+        /**
+         * Write buffered records to the file.
+         */
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Replay a journal, passing every note and release to the handler in recorded order.
+     * @param file The journal file.
+     * @param handler Receives the notes and releases.
+     * @return The number of notes replayed.
+     */
+
+    public static long replay(Path file, Handler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a palette journal: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a palette journal: " + file);
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported journal version " + buffer.getShort(4) + ": " + file);
+            }
+
+            // a trailing partial record is left over from an interrupted write
+            int end = HEADER_SIZE + (int) ((size - HEADER_SIZE) / RECORD_SIZE) * RECORD_SIZE;
+            long notes = 0;
+            for (int pos = HEADER_SIZE; pos < end; pos += RECORD_SIZE) {
+                int kind = buffer.get(pos + 7) & 0xff;
+                if ((kind & RELEASE) == 0) {
+                    handler.onNote(buffer.getInt(pos), buffer.get(pos + 4), buffer.get(pos + 5),
+                            buffer.get(pos + 6), kind);
+                    notes++;
+                } else if (pos + 2 * RECORD_SIZE <= end) {
+                    handler.onRelease(buffer.getInt(pos), buffer.get(pos + 4), buffer.get(pos + 5),
+                            buffer.get(pos + 6), kind & ~RELEASE, buffer.getLong(pos + RECORD_SIZE));
+                    pos += RECORD_SIZE;
+                } else {
+                    break;
+                }
+            }
+            return notes;
+        }
+    }
+
+    /**
+     * Replay a journal through a set of algorithms.
+     * @param file The journal file.
+     * @param algorithms The algorithms to add every note and release to.
+     * @return The number of notes replayed.
+     */
+
+    public static long replay(Path file, PaletteAlgorithm... algorithms) throws IOException {
+        return replay(file, new Handler() {
+            @Override
+            public void onNote(int timeMillis, int note, int velocity, int octave, int channel) {
+                for (PaletteAlgorithm algorithm : algorithms) {
+                    algorithm.add(note, velocity, octave);
+                }
+            }
+
+            @Override
+            public void onRelease(int timeMillis, int note, int velocity, int octave, int channel, long micros) {
+                for (PaletteAlgorithm algorithm : algorithms) {
+                    algorithm.release(note, velocity, octave, micros);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replay each journal given on the command line through every algorithm, and
+     * print the resulting palettes.
+     */
+
+    public static void main(String[] args) throws IOException {
+        int[] rgb = new int[PaletteAlgorithms.colors()];
+        for (String arg : args) {
+            PaletteAlgorithm[] algorithms = PaletteAlgorithms.createAll();
+            long start = System.nanoTime();
+            long notes = replay(Paths.get(arg), algorithms);
+            long micros = (System.nanoTime() - start) / 1000;
+
+            System.out.println(arg + ": " + notes + " notes in " + micros + " us");
+            for (int a = 0; a < algorithms.length; a++) {
+                StringBuilder sb = new StringBuilder("  ").append(PaletteAlgorithms.name(a)).append(':');
+                int count = algorithms[a].getColors(rgb);
+                for (int i = 0; i < count; i++) {
+                    sb.append(' ').append(ColorHex.format(rgb[i]));
+                }
+                System.out.println(sb);
+            }
+        }
+    }
+}
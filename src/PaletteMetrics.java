@@ -0,0 +1,279 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PaletteMetrics class measures the live path from a MIDI message arriving to
+ * the swatches changing. Each stage has a LatencyHistogram:
+ *
+ *     receive      decoding the message and queueing it, on the MIDI driver threads
+ *     queue        waiting in the event ring for the worker
+ *     interpret    updating the chord and the selected algorithm, on the worker
+ *     add ...      the selected algorithm's add() or release() on a live event
+ *     repaint      updating the labels and swatches, on the event dispatch thread
+ *     end to end   from the oldest event of a frame arriving to its swatches changing
+ *
+ * It also counts events, dropped and coalesced events, and the bytes the worker
+ * allocates per event. Everything is published as the JMX MBean
+ * "palette:type=PaletteMetrics" and written to standard output every period.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class PaletteMetrics implements PaletteMetricsMBean {
+
+    public static final int RECEIVE = 0;
+    public static final int QUEUE = 1;
+    public static final int INTERPRET = 2;
+    public static final int REPAINT = 3;
+    public static final int END_TO_END = 4;
+    public static final int FIRST_ALGORITHM = 5;
+
+    // returned by takeFrame() when no event is waiting to be shown
+    public static final long NO_EVENTS = Long.MIN_VALUE;
+
+    private static final String OBJECT_NAME = "palette:type=PaletteMetrics";
+
+    private final String[] stages;
+    private final LatencyHistogram[] histograms;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    // the events applied since the last frame, and when the oldest of them arrived;
+    // guarded by the caller's lock
+    private long pendingEvents;
+    private long pendingSince;
+
+    private volatile MidiEventRing[] rings;
+    private volatile Thread worker;
+    private volatile double eventsPerSecond;
+    private long lastSampleEvents;
+    private long lastSampleNanos = System.nanoTime();
+
+    /**
+     * Constructor for the PaletteMetrics class.
+     * @param algorithmNames The names of the algorithms, indexed like PaletteAlgorithms.
+     */
+
+    public PaletteMetrics(String[] algorithmNames) {
+        stages = new String[FIRST_ALGORITHM + algorithmNames.length];
+        stages[RECEIVE] = "receive";
+        stages[QUEUE] = "queue";
+        stages[INTERPRET] = "interpret";
+        stages[REPAINT] = "repaint";
+        stages[END_TO_END] = "end to end";
+        for (int i = 0; i < algorithmNames.length; i++) {
+            stages[FIRST_ALGORITHM + i] = "add " + algorithmNames[i];
+        }
+
+        histograms = new LatencyHistogram[stages.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Set where dropped events and worker allocations are read from.
+     * @param rings The rings the live events pass through.
+     * @param worker The thread that drains the rings.
+     */
+
+    public void watch(MidiEventRing[] rings, Thread worker) {
+        this.rings = rings;
+        this.worker = worker;
+    }
+
+    /**
+     * Record one duration of a stage.
+     * @param stage The stage, such as QUEUE or FIRST_ALGORITHM + the algorithm's index.
+     * @param nanos The duration in nanoseconds.
+     */
+
+    public void record(int stage, long nanos) {
+        histograms[stage].record(nanos);
+    }
+
+    /**
+     * Record one duration of a stage that several threads record at once, such as
+     * RECEIVE when several devices are open.
+     * @param stage The stage.
+     * @param nanos The duration in nanoseconds.
+     */
+
+    public void recordConcurrent(int stage, long nanos) {
+        histograms[stage].recordConcurrent(nanos);
+    }
+
+    /**
+     * Count an event applied by the worker. The caller must hold the lock it also
+     * holds when calling takeFrame().
+     * @param receivedNanos When the event arrived, from System.nanoTime().
+     */
+
+    public void eventApplied(long receivedNanos) {
+        events.lazySet(events.get() + 1);
+        if (pendingEvents++ == 0) {
+            pendingSince = receivedNanos;
+        }
+    }
+
+    /**
+     * Start a frame: every event applied since the last frame is about to be shown.
+     * The caller must hold the lock it also holds when calling eventApplied().
+     * @return When the oldest of those events arrived, or NO_EVENTS if there were none.
+     */
+
+    public long takeFrame() {
+        if (pendingEvents == 0)
+            return NO_EVENTS;
+        coalesced.lazySet(coalesced.get() + pendingEvents - 1);
+        pendingEvents = 0;
+        return pendingSince;
+    }
+
+    /**
+     * Publish the metrics over JMX and start writing them to standard output.
+     * @param periodSeconds How often the event rate is sampled and the report written, 0 for never.
+     * @param log Whether to write the report, or only sample the event rate.
+     */
+
+    public void start(long periodSeconds, boolean log) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("Metrics not published over JMX: " + e.getMessage());
+        }
+
+        if (periodSeconds <= 0)
+            return;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Palette metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            sample();
+            if (log) {
+                System.out.print(report());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        long count = events.get();
+        eventsPerSecond = (count - lastSampleEvents) * 1e9 / Math.max(1, now - lastSampleNanos);
+        lastSampleEvents = count;
+        lastSampleNanos = now;
+    }
+
+    @Override
+    public String[] getStages() {
+        return stages.clone();
+    }
+
+    @Override
+    public long[] getCounts() {
+        long[] values = new long[stages.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histograms[i].getCount();
+        }
+        return values;
+    }
+
+    @Override
+    public long[] getP50Nanos() {
+        return percentiles(0.5);
+    }
+
+    @Override
+    public long[] getP99Nanos() {
+        return percentiles(0.99);
+    }
+
+    @Override
+    public long[] getP999Nanos() {
+        return percentiles(0.999);
+    }
+
+    @Override
+    public long[] getMaxNanos() {
+        long[] values = new long[stages.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histograms[i].getMax();
+        }
+        return values;
+    }
+
+    @Override
+    public long getEventCount() {
+        return events.get();
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        MidiEventRing[] r = rings;
+        long dropped = 0;
+        if (r != null) {
+            for (MidiEventRing ring : r) {
+                dropped += ring.getDropped();
+            }
+        }
+        return dropped;
+    }
+
+    @Override
+    public long getCoalescedEvents() {
+        return coalesced.get();
+    }
+
+    @Override
+    public double getAllocatedBytesPerEvent() {
+        Thread t = worker;
+        long count = events.get();
+        if (t == null || count == 0 || !(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        long bytes = threads.getThreadAllocatedBytes(t.getId());
+        return bytes < 0 ? -1 : (double) bytes / count;
+    }
+
+    @Override
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT,
+                "Palette metrics: %d events, %.1f events/s, %d dropped, %d coalesced, %.1f bytes/event%n",
+                getEventCount(), getEventsPerSecond(), getDroppedEvents(), getCoalescedEvents(),
+                getAllocatedBytesPerEvent()));
+        sb.append(String.format(Locale.ROOT, "  %-28s %10s %10s %10s %10s %10s%n",
+                "stage", "count", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram h = histograms[i];
+            sb.append(String.format(Locale.ROOT, "  %-28s %10d %10.1f %10.1f %10.1f %10.1f%n",
+                    stages[i], h.getCount(), h.getPercentile(0.5) / 1e3, h.getPercentile(0.99) / 1e3,
+                    h.getPercentile(0.999) / 1e3, h.getMax() / 1e3));
+        }
+        return sb.toString();
+    }
+
+    private long[] percentiles(double fraction) {
+        long[] values = new long[stages.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histograms[i].getPercentile(fraction);
+        }
+        return values;
+    }
+}
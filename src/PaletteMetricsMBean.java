@@ -0,0 +1,71 @@
+/**
+ * The PaletteMetricsMBean interface is the JMX view of PaletteMetrics. Per-stage
+ * arrays are indexed like getStages().
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public interface PaletteMetricsMBean {
+
+    /**
+     * @return The name of every measured stage.
+     */
+    String[] getStages();
+
+    /**
+     * @return The number of values recorded for each stage.
+     */
+    long[] getCounts();
+
+    /**
+     * @return The median latency of each stage, in nanoseconds.
+     */
+    long[] getP50Nanos();
+
+    /**
+     * @return The 99th percentile latency of each stage, in nanoseconds.
+     */
+    long[] getP99Nanos();
+
+    /**
+     * @return The 99.9th percentile latency of each stage, in nanoseconds.
+     */
+    long[] getP999Nanos();
+
+    /**
+     * @return The largest latency of each stage, in nanoseconds.
+     */
+    long[] getMaxNanos();
+
+    /**
+     * @return The number of MIDI events processed.
+     */
+    long getEventCount();
+
+    /**
+     * @return The events processed per second over the last logging period.
+     */
+    double getEventsPerSecond();
+
+    /**
+     * @return The number of events dropped because the event ring was full.
+     */
+    long getDroppedEvents();
+
+    /**
+     * @return The number of events whose palette change was never shown on its own,
+     * because a later event arrived before the next repaint.
+     */
+    long getCoalescedEvents();
+
+    /**
+     * @return The bytes allocated by the event worker thread per processed event, or -1 if unknown.
+     */
+    double getAllocatedBytesPerEvent();
+
+    /**
+     * @return Every metric as readable text, as written to the log.
+     */
+    String report();
+}
@@ -0,0 +1,99 @@
+/**
+ * The PaletteSession class holds the palette state of one performer: a full set of
+ * algorithms fed by the notes of a single MIDI channel on a single device.
+ *
+ * Notes are added by one session worker thread; palettes may be read from any thread.
+ * When some algorithm is DURATION_WEIGHTED, keys and pedals are followed too, so each
+ * note is also released into the algorithms when it stops sounding.
+ *
+ * @version 1.1
+ * @since 2026-10-18
+ */
+
+public class PaletteSession {
+
+    private static final int NOTE_ON = 0x90;
+    private static final boolean RELEASES =
+            PaletteAlgorithms.any(PaletteAlgorithmProvider.Capability.DURATION_WEIGHTED);
+
+    private final int device;
+    private final String deviceName;
+    private final int channel;
+    private final PaletteAlgorithm[] algorithms;
+    // timed in nanoseconds, as the events are
+    private final NoteTracker notes = new NoteTracker(this::noteEnded);
+    private long noteCount;
+
+    /**
+     * Constructor for the PaletteSession class.
+     * @param device The index of the device, as given by PaletteSessionManager.
+     * @param deviceName The name of the device, for display.
+     * @param channel The MIDI channel, 0 to 15.
+     */
+
+    public PaletteSession(int device, String deviceName, int channel) {
+        this.device = device;
+        this.deviceName = deviceName;
+        this.channel = channel;
+        this.algorithms = PaletteAlgorithms.createAll();
+    }
+
+    /**
+     * Interpret a short MIDI message addressed to this session's channel.
+     * @param status the status byte, command and channel
+     * @param data1 the first data byte
+     * @param data2 the second data byte
+     * @param nanoTime when the event was received
+     */
+
+    synchronized void interpretMidi(int status, int data1, int data2, long nanoTime) {
+        if (RELEASES)
+            notes.handle(status, data1, data2, nanoTime);
+        if ((status & 0xF0) != NOTE_ON || data2 == 0)
+            return;
+
+        int octave = (data1 / 12) - 1;
+        int note = data1 % 12;
+        for (PaletteAlgorithm algorithm : algorithms) {
+            algorithm.add(note, data2, octave);
+        }
+        noteCount++;
+    }
+
+    private void noteEnded(int channel, int key, int velocity, long onset, long end) {
+        for (PaletteAlgorithm algorithm : algorithms) {
+            algorithm.release(key % 12, velocity, (key / 12) - 1, (end - onset) / 1000);
+        }
+    }
+
+    /**
+     * Copy the palette of one algorithm.
+     * @param algorithm The index of the algorithm, as in PaletteAlgorithms.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @return The number of colors written.
+     */
+
+    public synchronized int getColors(int algorithm, int[] rgb) {
+        return algorithms[algorithm].getColors(rgb);
+    }
+
+    /**
+     * @return The number of notes played in this session.
+     */
+
+    public synchronized long getNoteCount() {
+        return noteCount;
+    }
+
+    public int getDevice() {
+        return device;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public int getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,253 @@
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The PaletteSessionManager class runs many independent palette sessions in one
+ * process, one PaletteSession per MIDI device and channel, for installations with
+ * several keyboards.
+ *
+ * Each connected device gets a Receiver that sorts its messages by channel into
+ * MidiEventRings. Sessions are spread over a fixed number of stripes, each drained by
+ * its own worker thread, and a given device and channel always lands on the same
+ * stripe, so every session is only ever updated by one thread and throughput grows
+ * with the number of stripes.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class PaletteSessionManager implements AutoCloseable {
+
+    private static final int RING_CAPACITY = 4096;
+    private static final int DRAIN_BATCH = 256;
+
+    private final Stripe[] stripes;
+    private final ConcurrentHashMap<Integer, PaletteSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger deviceCount = new AtomicInteger();
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for the PaletteSessionManager class. Starts one worker per stripe.
+     * @param stripeCount The number of worker threads, usually the number of cores.
+     */
+
+    public PaletteSessionManager(int stripeCount) {
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i);
+            stripes[i].thread.start();
+        }
+    }
+
+    /**
+     * Register a device. Every message sent to the returned Receiver is routed to the
+     * session of its channel, which is created on its first note-on; other messages
+     * on a channel with no session yet, such as controllers, are ignored.
+     * The Receiver must only be fed from one thread, such as the device's transmitter.
+     * @param deviceName The name of the device, for display.
+     * @return The Receiver to connect the device's Transmitter to.
+     */
+
+    public Receiver connect(String deviceName) {
+        int device = deviceCount.getAndIncrement();
+        MidiEventRing[] rings = new MidiEventRing[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            rings[i] = new MidiEventRing(RING_CAPACITY);
+            stripes[i].addInput(new Input(device, deviceName, rings[i]));
+        }
+        return new DeviceReceiver(device, rings);
+    }
+
+    /**
+     * @param device The index of the device, in the order devices were connected.
+     * @param channel The MIDI channel, 0 to 15.
+     * @return The session, or null if nothing has been played on that channel yet.
+     */
+
+    public PaletteSession getSession(int device, int channel) {
+        return sessions.get(device * 16 + channel);
+    }
+
+    /**
+     * @return Every session started so far, ordered by device and channel.
+     */
+
+    public List<PaletteSession> getSessions() {
+        List<PaletteSession> list = new ArrayList<>(sessions.values());
+        list.sort(Comparator.comparingInt(PaletteSession::getDevice).thenComparingInt(PaletteSession::getChannel));
+        return list;
+    }
+
+    /**
+     * Stop the workers. Events still queued are discarded.
+     */
+
+    @Override
+    public void close() {
+        running = false;
+        for (Stripe stripe : stripes) {
+            LockSupport.unpark(stripe.thread);
+        }
+        for (Stripe stripe : stripes) {
+            try {
+                stripe.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int stripeOf(int device, int channel) {
+        return (device * 16 + channel) % stripes.length;
+    }
+
+    /**
+     * Receives the messages of one device and queues them on the stripe of their channel.
+     */
+
+    private class DeviceReceiver implements Receiver {
+
+        private final int device;
+        private final MidiEventRing[] rings;
+
+        DeviceReceiver(int device, MidiEventRing[] rings) {
+            this.device = device;
+            this.rings = rings;
+        }
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            if (!(message instanceof ShortMessage))
+                return;
+            ShortMessage sm = (ShortMessage) message;
+            int status = sm.getStatus();
+            // system messages have no channel
+            if (status >= 0xF0)
+                return;
+            rings[stripeOf(device, status & 0x0F)].offer(status, sm.getData1(), sm.getData2(), System.nanoTime());
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    /**
+     * One device's ring on one stripe, and the sessions of that device's channels
+     * handled by the stripe.
+     */
+
+    private class Input implements MidiEventRing.Handler {
+
+        private final int device;
+        private final String deviceName;
+        private final MidiEventRing ring;
+        private final PaletteSession[] byChannel = new PaletteSession[16];
+
+        Input(int device, String deviceName, MidiEventRing ring) {
+            this.device = device;
+            this.deviceName = deviceName;
+            this.ring = ring;
+        }
+
+        @Override
+        public void onEvent(int status, int data1, int data2, long nanoTime) {
+            int channel = status & 0x0F;
+            PaletteSession session = byChannel[channel];
+            if (session == null) {
+                // controllers, pitch bends and note-offs before any note start nothing
+                if ((status & 0xF0) != 0x90 || data2 == 0)
+                    return;
+                session = new PaletteSession(device, deviceName, channel);
+                byChannel[channel] = session;
+                sessions.put(device * 16 + channel, session);
+            }
+            session.interpretMidi(status, data1, data2, nanoTime);
+        }
+    }
+
+    /**
+     * A worker thread and the inputs it drains.
+     */
+
+    private class Stripe implements Runnable {
+
+        private final Thread thread;
+        private volatile Input[] inputs = new Input[0];
+        private volatile MidiEventRing[] rings = new MidiEventRing[0];
+
+        Stripe(int index) {
+            thread = new Thread(this, "Palette session stripe " + index);
+            thread.setDaemon(true);
+        }
+
+        synchronized void addInput(Input input) {
+            Input[] newInputs = Arrays.copyOf(inputs, inputs.length + 1);
+            MidiEventRing[] newRings = Arrays.copyOf(rings, rings.length + 1);
+            newInputs[inputs.length] = input;
+            newRings[rings.length] = input.ring;
+            inputs = newInputs;
+            rings = newRings;
+            // wake the worker so it starts waiting on the new ring too
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Input[] current = inputs;
+                int drained = 0;
+                for (Input input : current) {
+                    drained += input.ring.drain(input, DRAIN_BATCH);
+                }
+                if (drained == 0 && current == inputs) {
+                    MidiEventRing.awaitAny(rings);
+                }
+            }
+        }
+    }
+
+    /**
+     * Installation mode: open every MIDI input device and print each session's
+     * palette, for the algorithm given as the first argument, every two seconds.
+     */
+
+    public static void main(String[] args) throws Exception {
+        int algorithm = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        PaletteSessionManager manager = new PaletteSessionManager(Runtime.getRuntime().availableProcessors());
+
+        for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+            MidiDevice device = MidiSystem.getMidiDevice(info);
+            if (device instanceof Sequencer || device instanceof Synthesizer || device.getMaxTransmitters() == 0)
+                continue;
+            try {
+                device.open();
+                device.getTransmitter().setReceiver(manager.connect(info.getName()));
+                System.out.println("Listening to " + info.getName());
+            } catch (MidiUnavailableException e) {
+                System.out.println("Could not open " + info.getName() + ": " + e.getMessage());
+            }
+        }
+
+        int[] rgb = new int[PaletteAlgorithms.colors()];
+        while (true) {
+            Thread.sleep(2000);
+            for (PaletteSession session : manager.getSessions()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(session.getDeviceName()).append(" ch ").append(session.getChannel() + 1)
+                        .append(" (").append(session.getNoteCount()).append(" notes):");
+                int count = session.getColors(algorithm, rgb);
+                for (int i = 0; i < count; i++) {
+                    sb.append(' ').append(ColorHex.format(rgb[i]));
+                }
+                System.out.println(sb);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.VolatileImage;
+
+/**
+ * The PaletteSwatches class paints a whole palette as one component: one swatch per
+ * color, labelled with its hex value when there is room. It replaces a panel and a
+ * label per color, so palettes of hundreds of colors stay cheap to update and paint.
+ *
+ * Up to 16 colors are laid out in a row; larger palettes fill a grid whose cells are
+ * as close to square as the component allows.
+ *
+ * New colors do not snap into place: setColors() only records the target palette,
+ * and animate(), called once per display frame, moves every swatch a fixed share of
+ * its remaining distance to the target in OKLab, so a transition looks even whatever
+ * the colors. A new target only redirects the swatches from where they are, so a
+ * palette that changes every frame is still followed. However many palettes arrive
+ * between two frames, each frame blends and paints once. Swatches are
+ * drawn into a VolatileImage kept between frames, so a frame only redraws the swatches
+ * whose color moved and copies the rest.
+ *
+ * Like any Swing component, it must only be used on the event dispatch thread.
+ *
+ * @version 1.2
+ * @since 2026-10-18
+ */
+
+public class PaletteSwatches extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_ROW = 16;
+    // swatches narrower than this are drawn without a gap between them
+    private static final int MIN_GAP_SIZE = 12;
+    private static final int MAX = PaletteAlgorithms.MAX_COLORS;
+    // OKLab distance below which a swatch is shown at its target, under one 8-bit step
+    private static final float SETTLED = 0.001f;
+
+    private int count;
+    // the palette being moved towards, and the colors on screen
+    private final int[] target = new int[MAX];
+    private final int[] shown = new int[MAX];
+    private final int[] blended = new int[MAX];
+    // the Color each swatch was last painted with, replaced only when its color changes
+    private final Color[] paints = new Color[MAX];
+
+    // the transition in OKLab: where each swatch is going, and where it is
+    private final float[] toL = new float[MAX];
+    private final float[] toA = new float[MAX];
+    private final float[] toB = new float[MAX];
+    private final float[] nowL = new float[MAX];
+    private final float[] nowA = new float[MAX];
+    private final float[] nowB = new float[MAX];
+    private long lastFrame;
+    private long transitionNanos = 150_000_000L;
+    private boolean animating;
+
+    // swatches whose color changed since they were last drawn into the buffer
+    private final boolean[] dirty = new boolean[MAX];
+    private boolean allDirty = true;
+    private VolatileImage buffer;
+
+    // reused to draw hex labels without building strings
+    private final char[] hex = new char[7];
+    private final Rectangle cell = new Rectangle();
+
+    public PaletteSwatches() {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+    }
+
+    /**
+     * Set how long a swatch takes to reach a new color.
+     * @param millis The length of a transition; 0 shows new colors at once.
+     */
+
+    public void setTransitionMillis(int millis) {
+        transitionNanos = Math.max(0, millis) * 1_000_000L;
+    }
+
+    /**
+     * Move towards a new palette. Swatches go on from the color they show now, so a
+     * palette that changes again mid-transition turns smoothly.
+     * @param rgb The colors packed as 0xRRGGBB.
+     * @param length The number of colors, up to PaletteAlgorithms.MAX_COLORS.
+     */
+
+    public void setColors(int[] rgb, int length) {
+        if (length != count) {
+            // the layout changes with the number of colors, so there is nothing to blend from
+            count = length;
+            System.arraycopy(rgb, 0, target, 0, length);
+            System.arraycopy(rgb, 0, shown, 0, length);
+            animating = false;
+            allDirty = true;
+            repaint();
+            return;
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < length && !changed; i++) {
+            changed = rgb[i] != target[i];
+        }
+        if (!changed)
+            return;
+
+        System.arraycopy(rgb, 0, target, 0, length);
+        if (transitionNanos == 0) {
+            show(target);
+            return;
+        }
+        PerceptualColor.rgbToOklab(target, 0, toL, toA, toB, 0, length);
+        if (!animating) {
+            // a running transition keeps its position and clock and is only retargeted
+            PerceptualColor.rgbToOklab(shown, 0, nowL, nowA, nowB, 0, length);
+            lastFrame = System.nanoTime();
+            animating = true;
+        }
+    }
+
+    /**
+     * Advance the transition to the given time and repaint the swatches that moved.
+     * Call once per display frame. Each swatch closes about 98% of its distance to
+     * the target within the transition time, however often the target changes.
+     * @param nanoTime The time of the frame, from System.nanoTime().
+     * @return Whether a transition is still running.
+     */
+
+    public boolean animate(long nanoTime) {
+        if (!animating)
+            return false;
+
+        long elapsed = nanoTime - lastFrame;
+        if (elapsed <= 0)
+            return true;
+        lastFrame = nanoTime;
+
+        // exponential approach: the share covered depends only on the time since the
+        // last frame, so frames need not be evenly spaced and targets may move
+        float step = (float) (1.0 - Math.exp(-4.0 * elapsed / transitionNanos));
+        float remaining = 0;
+        for (int i = 0; i < count; i++) {
+            nowL[i] += (toL[i] - nowL[i]) * step;
+            nowA[i] += (toA[i] - nowA[i]) * step;
+            nowB[i] += (toB[i] - nowB[i]) * step;
+            remaining = Math.max(remaining, Math.abs(toL[i] - nowL[i])
+                    + Math.abs(toA[i] - nowA[i]) + Math.abs(toB[i] - nowB[i]));
+        }
+        if (remaining < SETTLED) {
+            animating = false;
+            show(target);
+            return false;
+        }
+        PerceptualColor.oklabToRgb(nowL, nowA, nowB, 0, blended, 0, count);
+        show(blended);
+        return true;
+    }
+
+    /**
+     * @return The number of colors shown.
+     */
+
+    public int getColorCount() {
+        return count;
+    }
+
+    /**
+     * @param index The index of a swatch.
+     * @return The color it shows, or is moving towards, packed as 0xRRGGBB.
+     */
+
+    public int getColor(int index) {
+        return target[index];
+    }
+
+    /**
+     * Find the swatch under a point, such as a mouse click.
+     * @param x The x coordinate within the component.
+     * @param y The y coordinate within the component.
+     * @return The index of the swatch, or -1 if there is none there.
+     */
+
+    public int indexAt(int x, int y) {
+        if (count == 0 || x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            return -1;
+        int columns = columns();
+        int rows = (count + columns - 1) / columns;
+        int index = (y * rows / getHeight()) * columns + x * columns / getWidth();
+        return index < count ? index : -1;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0)
+            return;
+
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config == null || !isDisplayable()) {
+            // not on screen, e.g. painted into an image
+            drawSwatches(g, g.getClipBounds(), true);
+            return;
+        }
+
+        do {
+            int status = buffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : buffer.validate(config);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE
+                    || buffer.getWidth() != width || buffer.getHeight() != height) {
+                // first paint, resized, or moved to another screen: the cells all move
+                if (buffer != null)
+                    buffer.flush();
+                buffer = createVolatileImage(width, height);
+                allDirty = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                allDirty = true;
+            }
+
+            Graphics2D bg = buffer.createGraphics();
+            try {
+                bg.setFont(getFont());
+                drawSwatches(bg, null, allDirty);
+                allDirty = false;
+            } finally {
+                bg.dispose();
+            }
+            g.drawImage(buffer, 0, 0, null);
+        } while (buffer.contentsLost());
+    }
+
+    /**
+     * Mark the swatches that now show a different color and repaint them.
+     */
+
+    private void show(int[] rgb) {
+        for (int i = 0; i < count; i++) {
+            if (rgb[i] != shown[i]) {
+                shown[i] = rgb[i];
+                dirty[i] = true;
+                bounds(i, cell);
+                repaint(cell);
+            }
+        }
+    }
+
+    /**
+     * Draw swatches, either every one inside a clip or only the dirty ones.
+     * @param g Where to draw.
+     * @param clip The area to draw, or null for the whole component.
+     * @param all Whether to draw every swatch rather than only the dirty ones.
+     */
+
+    private void drawSwatches(Graphics g, Rectangle clip, boolean all) {
+        if (all) {
+            g.setColor(getBackground());
+            if (clip == null)
+                g.fillRect(0, 0, getWidth(), getHeight());
+            else
+                g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        }
+
+        FontMetrics metrics = g.getFontMetrics();
+        int labelWidth = metrics.charsWidth(hex, 0, hex.length);
+        for (int i = 0; i < count; i++) {
+            if (!all && !dirty[i])
+                continue;
+            dirty[i] = false;
+            bounds(i, cell);
+            if (clip != null && !cell.intersects(clip))
+                continue;
+
+            int rgb = shown[i];
+            int gap = Math.min(cell.width, cell.height) >= MIN_GAP_SIZE ? 2 : 0;
+            if (!all && gap > 0) {
+                g.setColor(getBackground());
+                g.fillRect(cell.x, cell.y, cell.width, cell.height);
+            }
+            if (paints[i] == null || (paints[i].getRGB() & 0xffffff) != rgb)
+                paints[i] = new Color(rgb);
+            g.setColor(paints[i]);
+            g.fillRect(cell.x + gap, cell.y + gap, cell.width - 2 * gap, cell.height - 2 * gap);
+
+            if (cell.width > labelWidth + 4 && cell.height > metrics.getHeight()) {
+                ColorHex.format(rgb, hex, 0);
+                g.setColor(isLight(rgb) ? Color.BLACK : Color.WHITE);
+                g.drawChars(hex, 0, hex.length, cell.x + (cell.width - labelWidth) / 2,
+                        cell.y + (cell.height - metrics.getHeight()) / 2 + metrics.getAscent());
+            }
+        }
+    }
+
+    /**
+     * @return The number of swatches per row.
+     */
+
+    private int columns() {
+        if (count <= MAX_ROW)
+            return Math.max(1, count);
+        // about square cells: columns / rows close to width / height
+        double aspect = getHeight() > 0 ? (double) getWidth() / getHeight() : 1.0;
+        int columns = (int) Math.ceil(Math.sqrt(count * aspect));
+        return Math.max(1, Math.min(count, columns));
+    }
+
+    /**
+     * Compute the area of one swatch. Edges are rounded the same way for neighbours,
+     * so the swatches tile the component without gaps or overlaps.
+     */
+
+    private void bounds(int index, Rectangle r) {
+        int columns = columns();
+        int rows = (count + columns - 1) / columns;
+        int column = index % columns;
+        int row = index / columns;
+        int width = getWidth();
+        int height = getHeight();
+        r.x = column * width / columns;
+        r.y = row * height / rows;
+        r.width = (column + 1) * width / columns - r.x;
+        r.height = (row + 1) * height / rows - r.y;
+    }
+
+    /**
+     * @return Whether dark text reads better than light text on a color.
+     */
+
+    private static boolean isLight(int rgb) {
+        int red = (rgb >>> 16) & 0xff;
+        int green = (rgb >>> 8) & 0xff;
+        int blue = rgb & 0xff;
+        return 299 * red + 587 * green + 114 * blue > 128_000;
+    }
+}
@@ -0,0 +1,480 @@
+import javax.sound.midi.InvalidMidiDataException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * The PaletteTimeline class writes and reads palette timelines: the palette of every
+ * algorithm after every note and every release of a MIDI file, stamped with its real
+ * time from the file's tempo map, for rendering video frame by frame.
+ *
+ * The file is columnar. After a header naming the algorithms, frames are stored in
+ * blocks of up to 4096; each block holds a column of times, then one column per
+ * palette color of each algorithm, so colors that rarely change compress well with
+ * the optional run-length encoding:
+ *
+ *     header: int magic "PTLN", short version, short flags (1 = run-length encoded),
+ *             int algorithms, int colors, then per algorithm: short length, UTF-8 name
+ *     block:  int frames, int body length, then the body:
+ *             long time (microseconds) per frame,
+ *             int offset of each column from the start of the body,
+ *             each column: an int per frame, or int run count then (int length, int rgb) runs
+ *
+ * Writing holds one block in memory and reading maps the file, so neither depends
+ * on the length of the timeline.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public final class PaletteTimeline {
+
+    private static final int MAGIC = 0x50544c4e; // "PTLN"
+    private static final short VERSION = 1;
+    private static final short FLAG_RLE = 1;
+    private static final int BLOCK_FRAMES = 4096;
+
+    private PaletteTimeline() { }
+
+    /**
+     * Writes a timeline one frame at a time. Not thread-safe.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean rle;
+        private final long[] times = new long[BLOCK_FRAMES];
+        // one column per color of each algorithm
+        private final int[][] columns;
+        private int frames;
+
+        /**
+         * Create or truncate a timeline file.
+         * @param file The timeline file.
+         * @param names The names of the algorithms.
+         * @param colors The number of colors per palette.
+         * @param rle Whether to run-length encode the color columns.
+         */
+
+        public Writer(Path file, String[] names, int colors, boolean rle) throws IOException {
+            this.rle = rle;
+            this.columns = new int[names.length * colors][BLOCK_FRAMES];
+            int columnBytes = 4 + 8 * BLOCK_FRAMES; // worst case: a run per frame
+            this.buffer = ByteBuffer.allocateDirect(8 + 8 * BLOCK_FRAMES + columns.length * (4 + columnBytes))
+                    .order(ByteOrder.BIG_ENDIAN);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+
+            try {
+                buffer.putInt(MAGIC);
+                buffer.putShort(VERSION);
+                buffer.putShort(rle ? FLAG_RLE : 0);
+                buffer.putInt(names.length);
+                buffer.putInt(colors);
+                for (String name : names) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    buffer.putShort((short) bytes.length);
+                    buffer.put(bytes);
+                }
+                writeBuffer();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Append a frame.
+         * @param micros The time of the frame, in microseconds from the start of the file.
+         * @param rgb The palettes of all algorithms one after another, packed as 0xRRGGBB.
+         */
+
+        public void append(long micros, int[] rgb) throws IOException {
+            times[frames] = micros;
+            for (int c = 0; c < columns.length; c++) {
+                columns[c][frames] = rgb[c];
+            }
+            if (++frames == BLOCK_FRAMES) {
+                writeBlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (frames > 0) {
+                    writeBlock();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            buffer.putInt(frames);
+            int lengthAt = buffer.position();
+            buffer.putInt(0);
+            int body = buffer.position();
+
+            for (int i = 0; i < frames; i++) {
+                buffer.putLong(times[i]);
+            }
+            int table = buffer.position();
+            buffer.position(table + 4 * columns.length);
+
+            for (int c = 0; c < columns.length; c++) {
+                buffer.putInt(table + 4 * c, buffer.position() - body);
+                int[] column = columns[c];
+                if (!rle) {
+                    for (int i = 0; i < frames; i++) {
+                        buffer.putInt(column[i]);
+                    }
+                    continue;
+                }
+
+                int countAt = buffer.position();
+                buffer.putInt(0);
+                int runs = 0;
+                for (int i = 0; i < frames; ) {
+                    int value = column[i];
+                    int j = i + 1;
+                    while (j < frames && column[j] == value)
+                        j++;
+                    buffer.putInt(j - i);
+                    buffer.putInt(value);
+                    runs++;
+                    i = j;
+                }
+                buffer.putInt(countAt, runs);
+            }
+
+            buffer.putInt(lengthAt, buffer.position() - body);
+            writeBuffer();
+            frames = 0;
+        }
+
+        private void writeBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads a timeline file by mapping it into memory. Frames can be looked up by
+     * index or by time, in any order.
+     */
+    public static final class Reader {
+
+        private final MappedByteBuffer buffer;
+        private final boolean rle;
+        private final String[] names;
+        private final int colors;
+        // where each block's body starts, and the index of its first frame
+        private final int[] blockBody;
+        private final int[] blockFrames;
+        private final long[] blockFirstFrame;
+        private final long frameCount;
+
+        /**
+         * Open a timeline file.
+         * @param file The timeline file.
+         */
+
+        public Reader(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < 16 || size > Integer.MAX_VALUE) {
+                    throw new IOException("Not a palette timeline: " + file);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a palette timeline: " + file);
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported timeline version " + buffer.getShort(4) + ": " + file);
+            }
+            rle = (buffer.getShort(6) & FLAG_RLE) != 0;
+            names = new String[buffer.getInt(8)];
+            colors = buffer.getInt(12);
+
+            int pos = 16;
+            for (int a = 0; a < names.length; a++) {
+                int length = buffer.getShort(pos) & 0xffff;
+                byte[] bytes = new byte[length];
+                buffer.position(pos + 2);
+                buffer.get(bytes);
+                names[a] = new String(bytes, StandardCharsets.UTF_8);
+                pos += 2 + length;
+            }
+
+            // index the blocks; an incomplete last block is left over from an interrupted write
+            int limit = buffer.limit();
+            int blocks = 0;
+            for (int p = pos; p + 8 <= limit && p + 8L + buffer.getInt(p + 4) <= limit; p += 8 + buffer.getInt(p + 4)) {
+                blocks++;
+            }
+            blockBody = new int[blocks];
+            blockFrames = new int[blocks];
+            blockFirstFrame = new long[blocks];
+            long frames = 0;
+            for (int b = 0, p = pos; b < blocks; b++, p += 8 + buffer.getInt(p + 4)) {
+                blockFrames[b] = buffer.getInt(p);
+                blockBody[b] = p + 8;
+                blockFirstFrame[b] = frames;
+                frames += blockFrames[b];
+            }
+            frameCount = frames;
+        }
+
+        /**
+         * @return The number of algorithms in each frame.
+         */
+
+        public int getAlgorithmCount() {
+            return names.length;
+        }
+
+        /**
+         * @param algorithm The index of the algorithm.
+         * @return The name of the algorithm.
+         */
+
+        public String getName(int algorithm) {
+            return names[algorithm];
+        }
+
+        /**
+         * @return The number of colors per palette.
+         */
+
+        public int getColorCount() {
+            return colors;
+        }
+
+        /**
+         * @return The number of frames.
+         */
+
+        public long getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * @param frame The index of the frame.
+         * @return The time of the frame, in microseconds from the start of the file.
+         */
+
+        public long timeOf(long frame) {
+            int block = blockOf(frame);
+            return buffer.getLong(blockBody[block] + 8 * (int) (frame - blockFirstFrame[block]));
+        }
+
+        /**
+         * Find the frame shown at a time: the last frame at or before it.
+         * @param micros The time, in microseconds from the start of the file.
+         * @return The index of the frame, or -1 if the time is before the first frame.
+         */
+
+        public long frameAt(long micros) {
+            if (frameCount == 0 || micros < buffer.getLong(blockBody[0]))
+                return -1;
+
+            int low = 0;
+            int high = blockBody.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (buffer.getLong(blockBody[mid]) <= micros)
+                    low = mid;
+                else
+                    high = mid - 1;
+            }
+
+            int body = blockBody[low];
+            int first = 0;
+            int last = blockFrames[low] - 1;
+            while (first < last) {
+                int mid = (first + last + 1) >>> 1;
+                if (buffer.getLong(body + 8 * mid) <= micros)
+                    first = mid;
+                else
+                    last = mid - 1;
+            }
+            return blockFirstFrame[low] + first;
+        }
+
+        /**
+         * Copy one algorithm's palette at a frame.
+         * @param frame The index of the frame.
+         * @param algorithm The index of the algorithm.
+         * @param rgb Filled with the colors packed as 0xRRGGBB.
+         * @return The number of colors written.
+         */
+
+        public int getColors(long frame, int algorithm, int[] rgb) {
+            int block = blockOf(frame);
+            int index = (int) (frame - blockFirstFrame[block]);
+            for (int c = 0; c < colors; c++) {
+                rgb[c] = value(block, algorithm * colors + c, index);
+            }
+            return colors;
+        }
+
+        private int blockOf(long frame) {
+            if (frame < 0 || frame >= frameCount) {
+                throw new IndexOutOfBoundsException("No frame " + frame);
+            }
+            int low = 0;
+            int high = blockFirstFrame.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (blockFirstFrame[mid] <= frame)
+                    low = mid;
+                else
+                    high = mid - 1;
+            }
+            return low;
+        }
+
+        private int value(int block, int column, int index) {
+            int body = blockBody[block];
+            int start = body + buffer.getInt(body + 8 * blockFrames[block] + 4 * column);
+            if (!rle)
+                return buffer.getInt(start + 4 * index);
+
+            int runs = buffer.getInt(start);
+            for (int r = 0, p = start + 4; r < runs; r++, p += 8) {
+                int length = buffer.getInt(p);
+                if (index < length)
+                    return buffer.getInt(p + 4);
+                index -= length;
+            }
+            throw new IllegalStateException("Corrupt run-length column in block " + block);
+        }
+    }
+
+    /**
+     * Run every algorithm over a MIDI file in time order and write the palettes after
+     * each note and each release to a timeline.
+     * @param midiFile The .mid file.
+     * @param timelineFile The timeline file to write.
+     * @param rle Whether to run-length encode the color columns.
+     * @return The number of frames written.
+     */
+
+    public static long export(Path midiFile, Path timelineFile, boolean rle)
+            throws IOException, InvalidMidiDataException {
+        String[] names = new String[PaletteAlgorithms.count()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = PaletteAlgorithms.name(i);
+        }
+
+        try (Writer writer = new Writer(timelineFile, names, Exporter.COLORS, rle)) {
+            Exporter exporter = new Exporter(writer, PaletteAlgorithms.createAll());
+            try {
+                SmfReader.readMerged(midiFile, exporter);
+                exporter.finish();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return exporter.frames;
+        }
+    }
+
+    /**
+     * Feeds the notes of a file to the algorithms and writes a frame after each note
+     * and each release, timed with the file's tempo map.
+     */
+
+    private static final class Exporter extends NoteReader {
+
+        static final int COLORS = PaletteAlgorithms.colors();
+
+        private final Writer writer;
+        private final PaletteAlgorithm[] algorithms;
+        private final int[] frame;
+        private final int[] rgb = new int[COLORS];
+        private long frames;
+
+        Exporter(Writer writer, PaletteAlgorithm[] algorithms) {
+            super(algorithms, true);
+            this.writer = writer;
+            this.algorithms = algorithms;
+            this.frame = new int[algorithms.length * COLORS];
+        }
+
+        @Override
+        protected void onNote(int key, int velocity) {
+            super.onNote(key, velocity);
+            writeFrame();
+        }
+
+        @Override
+        protected void onRelease(int key, int velocity, long micros) {
+            super.onRelease(key, velocity, micros);
+            writeFrame();
+        }
+
+        private void writeFrame() {
+            for (int a = 0; a < algorithms.length; a++) {
+                algorithms[a].getColors(rgb);
+                System.arraycopy(rgb, 0, frame, a * COLORS, COLORS);
+            }
+            try {
+                writer.append(micros(), frame);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            frames++;
+        }
+    }
+
+    /**
+     * Export a timeline, or print the palettes of a timeline at a time.
+     *
+     * Usage: PaletteTimeline &lt;file.mid&gt; &lt;out.ptl&gt; [--raw]
+     *        PaletteTimeline --show &lt;file.ptl&gt; &lt;seconds&gt;
+     */
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--show")) {
+            Reader reader = new Reader(Paths.get(args[1]));
+            long frame = reader.frameAt((long) (Double.parseDouble(args[2]) * 1e6));
+            System.out.println(reader.getFrameCount() + " frames; frame " + frame
+                    + (frame < 0 ? "" : String.format(Locale.ROOT, " at %.3f s", reader.timeOf(frame) / 1e6)));
+            if (frame < 0)
+                return;
+            int[] rgb = new int[reader.getColorCount()];
+            for (int a = 0; a < reader.getAlgorithmCount(); a++) {
+                StringBuilder sb = new StringBuilder("  ").append(reader.getName(a)).append(':');
+                int count = reader.getColors(frame, a, rgb);
+                for (int i = 0; i < count; i++) {
+                    sb.append(' ').append(ColorHex.format(rgb[i]));
+                }
+                System.out.println(sb);
+            }
+        } else if (args.length >= 2) {
+            boolean rle = !(args.length > 2 && args[2].equals("--raw"));
+            long start = System.nanoTime();
+            long frames = export(Paths.get(args[0]), Paths.get(args[1]), rle);
+            System.out.println(frames + " frames written in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } else {
+            System.err.println("Usage: PaletteTimeline <file.mid> <out.ptl> [--raw]");
+            System.err.println("       PaletteTimeline --show <file.ptl> <seconds>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * The PerceptualColor class converts colors between sRGB and the perceptual color
+ * spaces OKLab and CIELAB (D65), a whole array at a time. In these
+ * spaces equal distances look like equal changes, so colors can be stepped and
+ * spaced evenly, unlike in RGB or HSB.
+ *
+ * Batch conversions take and fill one float array per channel, which keeps the
+ * inner loops free of allocation and lets the JIT keep each channel in registers.
+ * RGB colors are packed as 0xRRGGBB; conversion back to RGB clips colors outside
+ * the sRGB gamut channel by channel.
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public final class PerceptualColor {
+
+    // sRGB channel value to linear light
+    private static final float[] TO_LINEAR = new float[256];
+
+    // CIELAB reference white (D65) and the constants of its companding function
+    private static final double XN = 0.95047;
+    private static final double YN = 1.0;
+    private static final double ZN = 1.08883;
+    private static final double DELTA = 6.0 / 29.0;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    private PerceptualColor() { }
+
+    /**
+     * Convert colors from sRGB to OKLab.
+     * @param rgb The colors, packed as 0xRRGGBB.
+     * @param rgbOffset The index of the first color.
+     * @param lightness Filled with L, from 0 to 1.
+     * @param a Filled with a, green to red, about -0.4 to 0.4.
+     * @param b Filled with b, blue to yellow, about -0.4 to 0.4.
+     * @param labOffset The index the first result is written to.
+     * @param length The number of colors.
+     */
+
+    public static void rgbToOklab(int[] rgb, int rgbOffset, float[] lightness, float[] a, float[] b,
+                                  int labOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            int color = rgb[rgbOffset + i];
+            double r = TO_LINEAR[(color >>> 16) & 0xff];
+            double g = TO_LINEAR[(color >>> 8) & 0xff];
+            double bl = TO_LINEAR[color & 0xff];
+
+            double l = Math.cbrt(0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * bl);
+            double m = Math.cbrt(0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * bl);
+            double s = Math.cbrt(0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * bl);
+
+            lightness[labOffset + i] = (float) (0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s);
+            a[labOffset + i] = (float) (1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s);
+            b[labOffset + i] = (float) (0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s);
+        }
+    }
+
+    /**
+     * Convert colors from OKLab to sRGB.
+     * @param lightness The L of each color.
+     * @param a The a of each color.
+     * @param b The b of each color.
+     * @param labOffset The index of the first color.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @param rgbOffset The index the first result is written to.
+     * @param length The number of colors.
+     */
+
+    public static void oklabToRgb(float[] lightness, float[] a, float[] b, int labOffset,
+                                  int[] rgb, int rgbOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double lab = lightness[labOffset + i];
+            double la = a[labOffset + i];
+            double lb = b[labOffset + i];
+
+            double l = lab + 0.3963377774 * la + 0.2158037573 * lb;
+            double m = lab - 0.1055613458 * la - 0.0638541728 * lb;
+            double s = lab - 0.0894841775 * la - 1.2914855480 * lb;
+            l = l * l * l;
+            m = m * m * m;
+            s = s * s * s;
+
+            rgb[rgbOffset + i] = pack(4.0767416621 * l - 3.3077115913 * m + 0.2309699292 * s,
+                    -1.2684380046 * l + 2.6097574011 * m - 0.3413193965 * s,
+                    -0.0041960863 * l - 0.7034186147 * m + 1.7076147010 * s);
+        }
+    }
+
+    /**
+     * Convert colors from sRGB to CIELAB, relative to D65 white.
+     * @param rgb The colors, packed as 0xRRGGBB.
+     * @param rgbOffset The index of the first color.
+     * @param lightness Filled with L*, from 0 to 100.
+     * @param a Filled with a*.
+     * @param b Filled with b*.
+     * @param labOffset The index the first result is written to.
+     * @param length The number of colors.
+     */
+
+    public static void rgbToLab(int[] rgb, int rgbOffset, float[] lightness, float[] a, float[] b,
+                                int labOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            int color = rgb[rgbOffset + i];
+            double r = TO_LINEAR[(color >>> 16) & 0xff];
+            double g = TO_LINEAR[(color >>> 8) & 0xff];
+            double bl = TO_LINEAR[color & 0xff];
+
+            double fx = labCompand((0.4124564 * r + 0.3575761 * g + 0.1804375 * bl) / XN);
+            double fy = labCompand((0.2126729 * r + 0.7151522 * g + 0.0721750 * bl) / YN);
+            double fz = labCompand((0.0193339 * r + 0.1191920 * g + 0.9503041 * bl) / ZN);
+
+            lightness[labOffset + i] = (float) (116 * fy - 16);
+            a[labOffset + i] = (float) (500 * (fx - fy));
+            b[labOffset + i] = (float) (200 * (fy - fz));
+        }
+    }
+
+    /**
+     * Convert colors from CIELAB, relative to D65 white, to sRGB.
+     * @param lightness The L* of each color.
+     * @param a The a* of each color.
+     * @param b The b* of each color.
+     * @param labOffset The index of the first color.
+     * @param rgb Filled with the colors packed as 0xRRGGBB.
+     * @param rgbOffset The index the first result is written to.
+     * @param length The number of colors.
+     */
+
+    public static void labToRgb(float[] lightness, float[] a, float[] b, int labOffset,
+                                int[] rgb, int rgbOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double fy = (lightness[labOffset + i] + 16) / 116.0;
+            double fx = fy + a[labOffset + i] / 500.0;
+            double fz = fy - b[labOffset + i] / 200.0;
+
+            double x = XN * labExpand(fx);
+            double y = YN * labExpand(fy);
+            double z = ZN * labExpand(fz);
+
+            rgb[rgbOffset + i] = pack(3.2404542 * x - 1.5371385 * y - 0.4985314 * z,
+                    -0.9692660 * x + 1.8760108 * y + 0.0415560 * z,
+                    0.0556434 * x - 0.2040259 * y + 1.0572252 * z);
+        }
+    }
+
+    private static double labCompand(double t) {
+        return t > DELTA * DELTA * DELTA ? Math.cbrt(t) : t / (3 * DELTA * DELTA) + 4.0 / 29.0;
+    }
+
+    private static double labExpand(double t) {
+        return t > DELTA ? t * t * t : 3 * DELTA * DELTA * (t - 4.0 / 29.0);
+    }
+
+    /**
+     * Gamma-encode linear light channels, clipping them to the sRGB gamut.
+     * @return The color packed as 0xRRGGBB.
+     */
+
+    private static int pack(double r, double g, double b) {
+        return (toSrgb(r) << 16) | (toSrgb(g) << 8) | toSrgb(b);
+    }
+
+    private static int toSrgb(double linear) {
+        if (linear <= 0)
+            return 0;
+        if (linear >= 1)
+            return 255;
+        double c = linear <= 0.0031308 ? 12.92 * linear : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+        return (int) (c * 255 + 0.5);
+    }
+}
@@ -6,6 +6,9 @@ import java.awt.*;
  * The algorithm moves the previously played notes to the right in the palette and adds a new note.
  * Basically, this algorithm shows the last 5 notes played.
  *
+ * The notes are kept in a ring buffer, newest at the head, so adding a note costs the
+ * same whatever the size of the palette.
+ *
  * This reflects the synesthesia Alexander Scribian experienced.
  *
  */
@@ -14,12 +17,25 @@ public class Scriabin implements PaletteAlgorithm {
 
     private Color[] palette;
     private Color[] wheel;
+    private int[] wheelRGB;
+
+    // the last notes played, newest at head, -1 where no note has been played yet
+    private int[] notes;
+    private int head;
 
     public Scriabin() {
-        palette = new Color[5];
-        for (int i = 0; i < 5; i++) {
-            palette[i] = new Color(0, 0, 0);
-        }
+        this(5);
+    }
+
+    /**
+     * Constructor for a Scriabin showing any number of notes.
+     * @param size The number of colors in the palette.
+     */
+
+    public Scriabin(int size) {
+        palette = new Color[size];
+        notes = new int[size];
+        reset();
 
         wheel = new Color[12];
 
@@ -40,23 +56,40 @@ public class Scriabin implements PaletteAlgorithm {
         wheel[10] = new Color(169, 103, 124);
         wheel[11] = new Color(142, 201, 255);
 
+        wheelRGB = new int[wheel.length];
+        for (int i = 0; i < wheel.length; i++) {
+            wheelRGB[i] = wheel[i].getRGB() & 0xffffff;
+        }
     }
 
     public void add(int note, int velocity, int octave) {
 
-        // assign Scribian colors
-        Color newColor = wheel[note];
+        // move the head left, so the older notes appear shifted to the right
+        head = (head == 0 ? notes.length : head) - 1;
+        notes[head] = note;
 
-        // shift all colors to the right
-        palette[4] = palette[3];
-        palette[3] = palette[2];
-        palette[2] = palette[1];
-        palette[1] = palette[0];
-        palette[0] = newColor;
+    }
 
+    public void reset() {
+        for (int i = 0; i < notes.length; i++) {
+            notes[i] = -1;
+        }
+        head = 0;
     }
 
     public Color[] getColors() {
+        int n = notes.length;
+        for (int i = 0, j = head; i < n; i++, j = j + 1 == n ? 0 : j + 1) {
+            palette[i] = notes[j] < 0 ? Color.BLACK : wheel[notes[j]];
+        }
         return palette;
     }
+
+    public int getColors(int[] rgb) {
+        int n = notes.length;
+        for (int i = 0, j = head; i < n; i++, j = j + 1 == n ? 0 : j + 1) {
+            rgb[i] = notes[j] < 0 ? 0 : wheelRGB[notes[j]];
+        }
+        return n;
+    }
 }
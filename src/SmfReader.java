@@ -0,0 +1,438 @@
+import javax.sound.midi.InvalidMidiDataException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The SmfReader class is a streaming reader for Standard MIDI Files. The file is
+ * memory-mapped and decoded in place: delta times and running status are resolved
+ * on the fly and each channel message is passed to a handler as primitives, so no
+ * Sequence, Track or MidiEvent objects are built and memory use does not depend on
+ * the size of the file.
+ *
+ * read() passes the tracks one after another, in the order they are stored in the
+ * file. readMerged() passes the events of all tracks in time order: the tracks are
+ * merged with a heap of track indices keyed by the tick of each track's next event,
+ * and events at the same tick keep track order.
+ *
+ * Tempo changes are passed to the handler's onTempo(), so callers that need real
+ * time can keep a tempo map, such as a Clock; other meta events and system exclusive
+ * events are skipped. Like the javax.sound.midi reader, running status is kept
+ * across them.
+ *
+ * @version 1.3
+ * @since 2026-10-18
+ */
+
+public final class SmfReader {
+
+    /**
+     * Receives every channel message of the file.
+     */
+    public interface Handler {
+        /**
+         * @param track The index of the track the event belongs to.
+         * @param tick The absolute time of the event, in ticks from the start of the track.
+         * @param status The status byte, command and channel.
+         * @param data1 The first data byte.
+         * @param data2 The second data byte, 0 for messages with a single data byte.
+         */
+        void onEvent(int track, long tick, int status, int data1, int data2);
+
+        /**
+         * Called once, before any event, with the timing of the file.
+         * @param division Ticks per quarter note, or SMPTE format if negative.
+         */
+        default void onHeader(int division) { }
+
+        /**
+         * Called for every tempo change (meta event 0x51), in the same order as events.
+         * @param track The index of the track the tempo change belongs to.
+         * @param tick The absolute time of the change, in ticks.
+         * @param microsPerQuarter The new tempo, in microseconds per quarter note.
+         */
+        default void onTempo(int track, long tick, int microsPerQuarter) { }
+    }
+
+    private static final int MTHD = 0x4d546864;
+    private static final int MTRK = 0x4d54726b;
+    private static final int META = 0xff;
+    private static final int META_TEMPO = 0x51;
+
+    private SmfReader() { }
+
+    /**
+     * Read a MIDI file track by track, passing every channel message to the handler.
+     * @param file The .mid file.
+     * @param handler Receives the events, track by track.
+     * @return The division of the file (ticks per quarter note, or SMPTE format if negative).
+     */
+
+    public static int read(Path file, Handler handler) throws IOException, InvalidMidiDataException {
+        return read(map(file), handler);
+    }
+
+    /**
+     * Read a MIDI file in time order across all tracks, passing every channel message to the handler.
+     * @param file The .mid file.
+     * @param handler Receives the events, ordered by tick.
+     * @return The division of the file (ticks per quarter note, or SMPTE format if negative).
+     */
+
+    public static int readMerged(Path file, Handler handler) throws IOException, InvalidMidiDataException {
+        return readMerged(map(file), handler);
+    }
+
+    /**
+     * Read a MIDI file already in memory track by track, passing every channel message to the handler.
+     * @param buffer The contents of the file, from position 0 to its limit.
+     * @param handler Receives the events, track by track.
+     * @return The division of the file (ticks per quarter note, or SMPTE format if negative).
+     */
+
+    public static int read(ByteBuffer buffer, Handler handler) throws InvalidMidiDataException {
+        Tracks tracks = new Tracks(buffer);
+        handler.onHeader(tracks.division);
+        for (int t = 0; t < tracks.count; t++) {
+            while (tracks.advance(t)) {
+                tracks.emit(t, handler);
+            }
+        }
+        return tracks.division;
+    }
+
+    /**
+     * Read a MIDI file already in memory in time order across all tracks.
+     * @param buffer The contents of the file, from position 0 to its limit.
+     * @param handler Receives the events, ordered by tick.
+     * @return The division of the file (ticks per quarter note, or SMPTE format if negative).
+     */
+
+    public static int readMerged(ByteBuffer buffer, Handler handler) throws InvalidMidiDataException {
+        Tracks tracks = new Tracks(buffer);
+        handler.onHeader(tracks.division);
+
+        // min-heap of the tracks that still have events, by the tick of their next event
+        int[] heap = new int[tracks.count];
+        int size = 0;
+        for (int t = 0; t < tracks.count; t++) {
+            if (tracks.advance(t)) {
+                heap[size] = t;
+                siftUp(heap, size++, tracks.tick);
+            }
+        }
+
+        while (size > 0) {
+            int t = heap[0];
+            tracks.emit(t, handler);
+            if (!tracks.advance(t)) {
+                heap[0] = heap[--size];
+            }
+            siftDown(heap, size, tracks.tick);
+        }
+        return tracks.division;
+    }
+
+    /**
+     * A tempo map, which converts ticks to microseconds from the start of the file.
+     * The whole map is kept, so it also works when reading track by track, where the
+     * tempo track is read before the events it times.
+     */
+
+    public static final class Clock {
+
+        private static final int DEFAULT_MICROS_PER_QUARTER = 500_000; // 120 bpm
+
+        private int division = 480;
+        // each tempo change: its tick, its time, and the new tempo
+        private long[] ticks = new long[8];
+        private long[] micros = new long[8];
+        private int[] tempos = new int[8];
+        private int changes;
+
+        public Clock() {
+            tempos[0] = DEFAULT_MICROS_PER_QUARTER;
+            changes = 1;
+        }
+
+        /**
+         * @param division Ticks per quarter note, or SMPTE format if negative, as passed to onHeader().
+         */
+
+        public void setDivision(int division) {
+            this.division = division;
+        }
+
+        /**
+         * Add a tempo change, as passed to onTempo().
+         * @param tick The absolute time of the change, in ticks.
+         * @param microsPerQuarter The new tempo, in microseconds per quarter note.
+         */
+
+        public void addTempo(long tick, int microsPerQuarter) {
+            if (changes == ticks.length) {
+                ticks = Arrays.copyOf(ticks, 2 * changes);
+                micros = Arrays.copyOf(micros, 2 * changes);
+                tempos = Arrays.copyOf(tempos, 2 * changes);
+            }
+            // changes come in tick order except across tracks, so insert from the end
+            int i = changes++;
+            while (i > 1 && ticks[i - 1] > tick) {
+                ticks[i] = ticks[i - 1];
+                tempos[i] = tempos[i - 1];
+                i--;
+            }
+            ticks[i] = tick;
+            tempos[i] = microsPerQuarter;
+            for (int j = Math.max(1, i); j < changes; j++) {
+                micros[j] = micros[j - 1] + (ticks[j] - ticks[j - 1]) * tempos[j - 1] / Math.max(1, division);
+            }
+        }
+
+        /**
+         * @param tick An absolute time in ticks.
+         * @return The time in microseconds from the start of the file.
+         */
+
+        public long micros(long tick) {
+            if (division < 0) {
+                // SMPTE: frames per second in the high byte, ticks per frame in the low byte
+                int fps = -(division >> 8);
+                double rate = fps == 29 ? 30000 / 1001.0 : fps;
+                return (long) (tick * 1e6 / (rate * (division & 0xff)));
+            }
+
+            // the last change at or before the tick; usually the last change of all
+            int i = changes - 1;
+            if (ticks[i] > tick) {
+                int low = 0;
+                int high = i;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (ticks[mid] <= tick)
+                        low = mid;
+                    else
+                        high = mid - 1;
+                }
+                i = low;
+            }
+            return micros[i] + (tick - ticks[i]) * tempos[i] / Math.max(1, division);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException, InvalidMidiDataException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new InvalidMidiDataException("File too large: " + size + " bytes");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static boolean before(int a, int b, long[] tick) {
+        return tick[a] < tick[b] || (tick[a] == tick[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int i, long[] tick) {
+        int t = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(t, heap[parent], tick))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = t;
+    }
+
+    private static void siftDown(int[] heap, int size, long[] tick) {
+        if (size == 0)
+            return;
+        int t = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && before(heap[child + 1], heap[child], tick))
+                child++;
+            if (!before(heap[child], t, tick))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = t;
+    }
+
+    /**
+     * A decoding cursor over every track chunk of a file. The position, running
+     * status and last decoded event of each track are kept in parallel arrays.
+     */
+
+    private static final class Tracks {
+
+        private final ByteBuffer buffer;
+        private final int division;
+        private final int count;
+        private final int[] pos;
+        private final int[] end;
+        private final int[] runningStatus;
+        private final long[] tick;
+        // status, data1 and data2 of the last decoded event, packed, or META with
+        // the tempo in the low 24 bits for a tempo change
+        private final int[] event;
+
+        Tracks(ByteBuffer buffer) throws InvalidMidiDataException {
+            this.buffer = buffer;
+            int limit = buffer.limit();
+            if (limit < 14 || buffer.getInt(0) != MTHD) {
+                throw new InvalidMidiDataException("Not a Standard MIDI File");
+            }
+
+            int headerLength = buffer.getInt(4);
+            if (headerLength < 6 || 8L + headerLength > limit) {
+                throw new InvalidMidiDataException("Bad header length " + headerLength);
+            }
+            int trackCount = buffer.getShort(10) & 0xffff;
+            division = buffer.getShort(12);
+
+            pos = new int[trackCount];
+            end = new int[trackCount];
+            int chunk = 8 + headerLength;
+            int found = 0;
+            while (found < trackCount && chunk + 8 <= limit) {
+                int type = buffer.getInt(chunk);
+                long length = buffer.getInt(chunk + 4) & 0xffffffffL;
+                int start = chunk + 8;
+                if (start + length > limit) {
+                    throw new InvalidMidiDataException("Chunk at byte " + chunk + " runs past the end of the file");
+                }
+                // unknown chunk types must be skipped
+                if (type == MTRK) {
+                    pos[found] = start;
+                    end[found] = start + (int) length;
+                    found++;
+                }
+                chunk = start + (int) length;
+            }
+
+            count = found;
+            runningStatus = new int[count];
+            tick = new long[count];
+            event = new int[count];
+        }
+
+        /**
+         * Pass the last decoded event of a track to the handler.
+         */
+
+        void emit(int track, Handler handler) {
+            int e = event[track];
+            if (e >>> 24 == META) {
+                handler.onTempo(track, tick[track], e & 0xffffff);
+            } else {
+                handler.onEvent(track, tick[track], e >>> 16, (e >>> 8) & 0xff, e & 0xff);
+            }
+        }
+
+        /**
+         * Decode the next channel message or tempo change of a track.
+         * @param track The index of the track.
+         * @return false if the track has no more of them.
+         */
+
+        boolean advance(int track) throws InvalidMidiDataException {
+            int p = pos[track];
+            int e = end[track];
+
+            while (p < e) {
+                // variable-length delta time, at most four bytes
+                int delta = 0;
+                int b;
+                int vlqEnd = p + 4;
+                do {
+                    if (p >= e || p >= vlqEnd) {
+                        throw new InvalidMidiDataException("Bad delta time in track " + track);
+                    }
+                    b = buffer.get(p++) & 0xff;
+                    delta = (delta << 7) | (b & 0x7f);
+                } while ((b & 0x80) != 0);
+                tick[track] += delta;
+
+                if (p >= e) {
+                    throw new InvalidMidiDataException("Truncated event in track " + track);
+                }
+                int status = buffer.get(p) & 0xff;
+
+                if (status == META) {
+                    // meta event: type, length, data
+                    if (p + 5 < e && (buffer.get(p + 1) & 0xff) == META_TEMPO && buffer.get(p + 2) == 3) {
+                        event[track] = (META << 24) | ((buffer.get(p + 3) & 0xff) << 16)
+                                | ((buffer.get(p + 4) & 0xff) << 8) | (buffer.get(p + 5) & 0xff);
+                        pos[track] = p + 6;
+                        return true;
+                    }
+                    p = skipBlock(p + 2, e, track);
+                    continue;
+                }
+                if (status == 0xf0 || status == 0xf7) {
+                    // system exclusive: length, data
+                    p = skipBlock(p + 1, e, track);
+                    continue;
+                }
+
+                if (status >= 0x80) {
+                    runningStatus[track] = status;
+                    p++;
+                } else if (runningStatus[track] == 0) {
+                    throw new InvalidMidiDataException("Data byte without status in track " + track);
+                }
+
+                int running = runningStatus[track];
+                int command = running & 0xf0;
+                int dataBytes = (command == 0xc0 || command == 0xd0) ? 1 : 2;
+                if (p + dataBytes > e) {
+                    throw new InvalidMidiDataException("Truncated event in track " + track);
+                }
+                int data1 = buffer.get(p) & 0x7f;
+                int data2 = dataBytes == 2 ? buffer.get(p + 1) & 0x7f : 0;
+
+                event[track] = (running << 16) | (data1 << 8) | data2;
+                pos[track] = p + dataBytes;
+                return true;
+            }
+
+            pos[track] = p;
+            return false;
+        }
+
+        /**
+         * Skip a length-prefixed block of data.
+         * @param p The position of the variable-length length.
+         * @return The position after the data.
+         */
+
+        private int skipBlock(int p, int e, int track) throws InvalidMidiDataException {
+            int length = 0;
+            int b;
+            int vlqEnd = p + 4;
+            do {
+                if (p >= e || p >= vlqEnd) {
+                    throw new InvalidMidiDataException("Bad event length in track " + track);
+                }
+                b = buffer.get(p++) & 0xff;
+                length = (length << 7) | (b & 0x7f);
+            } while ((b & 0x80) != 0);
+
+            if (p + length > e) {
+                throw new InvalidMidiDataException("Truncated event in track " + track);
+            }
+            return p + length;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Checks that converting NoteDistance's colors through PackedHSB gives the same
+ * colors as HSBColor.getRGB(), within one step of Color.HSBtoRGB, and that the
+ * palettes NoteDistance returns as ints and as Colors agree.
+ *
+ * Usage: java -cp classes:test-classes PackedHSBTest
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class PackedHSBTest {
+
+    private static final int MAX_VELOCITY = 127;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+
+        // saturation and brightness as NoteDistance sets them: a note's average
+        // velocity over 127, scaled by how it compares to the loudest note
+        HSBColor color = new HSBColor();
+        for (int i = 0; i < 200_000; i++) {
+            float average = 1 + random.nextFloat() * (MAX_VELOCITY - 1);
+            float loudest = average + random.nextFloat() * (MAX_VELOCITY - average);
+            float value = (average / loudest) * (average / MAX_VELOCITY);
+            float hue = random.nextFloat();
+            color.setHue(hue);
+            color.setSaturation(value);
+            color.setBrightness(value);
+
+            int rgb = color.getRGB();
+            check(PackedHSB.toRGB(color.getPacked()) == rgb, "packed " + hex(PackedHSB.toRGB(color.getPacked()))
+                    + " != getRGB() " + hex(rgb));
+            int reference = Color.HSBtoRGB(hue, value, value) & 0xffffff;
+            check(withinOneStep(rgb, reference), "getRGB() " + hex(rgb) + " is not within one step of "
+                    + hex(reference) + " for h " + hue + " s/b " + value);
+        }
+
+        // every palette an algorithm produces, read both ways
+        int[] rgb = new int[12];
+        for (int colors : new int[]{5, 12}) {
+            NoteDistance algorithm = new NoteDistance(0, colors, false);
+            for (int i = 0; i < 5_000; i++) {
+                algorithm.add(random.nextInt(12), 1 + random.nextInt(MAX_VELOCITY), random.nextInt(8));
+                int count = algorithm.getColors(rgb);
+                Color[] paints = algorithm.getColors();
+                for (int c = 0; c < count; c++) {
+                    check((paints[c].getRGB() & 0xffffff) == rgb[c], "color " + c + " of " + colors + ": "
+                            + hex(paints[c].getRGB() & 0xffffff) + " != " + hex(rgb[c]));
+                }
+            }
+        }
+        System.out.println("PackedHSBTest passed");
+    }
+
+    private static boolean withinOneStep(int a, int b) {
+        for (int shift = 0; shift < 24; shift += 8) {
+            if (Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)) > 1)
+                return false;
+        }
+        return true;
+    }
+
+    private static String hex(int rgb) {
+        return String.format("#%06x", rgb);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
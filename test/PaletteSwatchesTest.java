@@ -0,0 +1,78 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Checks that PaletteSwatches follows a palette that changes on every frame, and
+ * settles exactly on a palette that stops changing. Runs headless.
+ *
+ * Usage: java -Djava.awt.headless=true -cp classes:test-classes PaletteSwatchesTest
+ *
+ * @version 1.0
+ * @since 2026-10-18
+ */
+
+public class PaletteSwatchesTest {
+
+    private static final long FRAME = 16_000_000L;
+    private static final int COLORS = 5;
+
+    public static void main(String[] args) {
+        PaletteSwatches swatches = new PaletteSwatches();
+        swatches.setSize(500, 100);
+        swatches.setColors(new int[COLORS], COLORS);
+
+        // a new, almost white palette on every frame for two seconds, as when notes
+        // arrive faster than the display refreshes
+        int[] rgb = new int[COLORS];
+        long time = System.nanoTime();
+        int previous = brightness(swatches);
+        for (int frame = 0; frame < 125; frame++) {
+            Arrays.fill(rgb, frame % 2 == 0 ? 0xffffff : 0xfefefe);
+            swatches.setColors(rgb, COLORS);
+            time += FRAME;
+            swatches.animate(time);
+
+            int now = brightness(swatches);
+            // the targets differ by one step, so only check the way up to them
+            check(now >= Math.min(previous, 0xfc), "frame " + frame + " moved away from the target: " + now + " < " + previous);
+            previous = now;
+        }
+        check(previous >= 0xfc, "swatches did not follow a palette changing every frame: " + Integer.toHexString(previous));
+
+        // a palette that stops changing is reached exactly
+        Arrays.fill(rgb, 0x336699);
+        swatches.setColors(rgb, COLORS);
+        boolean running = true;
+        for (int frame = 0; frame < 100 && running; frame++) {
+            time += FRAME;
+            running = swatches.animate(time);
+        }
+        check(!running, "transition did not end");
+        check((pixel(swatches) & 0xffffff) == 0x336699, "did not settle on the target: "
+                + Integer.toHexString(pixel(swatches) & 0xffffff));
+
+        System.out.println("PaletteSwatchesTest passed");
+    }
+
+    private static int brightness(PaletteSwatches swatches) {
+        return pixel(swatches) & 0xff;
+    }
+
+    /**
+     * Paint the swatches and read the first one, away from its label.
+     */
+
+    private static int pixel(PaletteSwatches swatches) {
+        BufferedImage image = new BufferedImage(swatches.getWidth(), swatches.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        swatches.paint(g);
+        g.dispose();
+        return image.getRGB(5, 5);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}